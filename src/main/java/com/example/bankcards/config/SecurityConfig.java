@@ -1,7 +1,14 @@
 package com.example.bankcards.config;
 
+import com.example.bankcards.security.BCryptCostCalibrator;
+import com.example.bankcards.security.BoundedPasswordEncoder;
 import com.example.bankcards.security.JwtAuthenticationFilter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -12,6 +19,7 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -19,12 +27,17 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Map;
 
 @Configuration
 @EnableWebSecurity
 @EnableMethodSecurity
 public class SecurityConfig {
+    private static final Logger logger = LoggerFactory.getLogger(SecurityConfig.class);
+    private static final String BCRYPT_ID = "bcrypt";
+
     @Autowired
     private JwtAuthenticationFilter JwtAuthenticationFilter;
 
@@ -66,9 +79,28 @@ public class SecurityConfig {
         return source;
     }
 
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    // Новые хэши — {bcrypt} с cost, подобранным при старте под target-hash-ms (или заданным явно);
+    // старые хэши без префикса по-прежнему проверяются и перехэшируются при входе (PasswordRehashService).
+    // BCrypt выполняется на отдельном ограниченном пуле, см. BoundedPasswordEncoder
+    @Bean(destroyMethod = "shutdown")
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry,
+                                           @Value("${security.password-encoder.threads:0}") int threads,
+                                           @Value("${security.password-encoder.queue-capacity:64}") int queueCapacity,
+                                           @Value("${security.password-encoder.retry-after-seconds:1}") long retryAfterSeconds,
+                                           @Value("${security.password-encoder.bcrypt-cost:0}") int bcryptCost,
+                                           @Value("${security.password-encoder.target-hash-ms:250}") long targetHashMs,
+                                           @Value("${security.password-encoder.min-cost:10}") int minCost,
+                                           @Value("${security.password-encoder.max-cost:14}") int maxCost) {
+        int cost = bcryptCost > 0 ? bcryptCost : BCryptCostCalibrator.calibrate(Duration.ofMillis(targetHashMs), minCost, maxCost);
+        logger.info("Using BCrypt cost {}", cost);
+        Gauge.builder("password.encoder.bcrypt.cost", () -> cost).register(meterRegistry);
+
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder(BCRYPT_ID,
+                Map.of(BCRYPT_ID, new BCryptPasswordEncoder(cost)));
+        delegating.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder());
+
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new BoundedPasswordEncoder(delegating, poolSize, queueCapacity, retryAfterSeconds, meterRegistry);
     }
 
     @Bean
@@ -0,0 +1,21 @@
+package com.example.bankcards.config;
+
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.concurrent.Executors;
+
+// Профиль virtual-threads: каждый HTTP-запрос обрабатывается в своём виртуальном потоке вместо пула Tomcat (200 потоков).
+// Блокирующий JDBC больше не ограничен числом потоков; реальный предел параллельной работы с БД — пул Hikari,
+// ожидание соединения стоит только памяти. BCrypt по-прежнему выполняется на ограниченном пуле BoundedPasswordEncoder.
+@Configuration
+@Profile("virtual-threads")
+public class VirtualThreadsConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadExecutorCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
@@ -2,21 +2,42 @@
 package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.*;
+import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.ResourceNotFoundException;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.CustomUserDetailsService;
+import com.example.bankcards.security.TokenVersionRegistry;
+import com.example.bankcards.security.UserPrincipal;
+import com.example.bankcards.service.CardImportService;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.ExportService;
+import com.example.bankcards.service.UsernameIndex;
+import com.example.bankcards.util.KeysetCursor;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 
@@ -28,10 +49,22 @@ public class    AdminController {
     private UserRepository userRepository;
     private final CardService cardService;
     private final PasswordEncoder passwordEncoder;
+    private final CardImportService cardImportService;
+    private final TokenVersionRegistry tokenVersionRegistry;
+    private final CustomUserDetailsService userDetailsService;
+    private final UsernameIndex usernameIndex;
+    private final ExportService exportService;
 
-    public AdminController(CardService cardService, PasswordEncoder passwordEncoder) {
+    public AdminController(CardService cardService, PasswordEncoder passwordEncoder, CardImportService cardImportService,
+                           TokenVersionRegistry tokenVersionRegistry, CustomUserDetailsService userDetailsService,
+                           UsernameIndex usernameIndex, ExportService exportService) {
         this.cardService = cardService;
         this.passwordEncoder = passwordEncoder;
+        this.cardImportService = cardImportService;
+        this.tokenVersionRegistry = tokenVersionRegistry;
+        this.userDetailsService = userDetailsService;
+        this.usernameIndex = usernameIndex;
+        this.exportService = exportService;
     }
 
     @PostMapping("/cards")
@@ -40,31 +73,74 @@ public class    AdminController {
         return ResponseEntity.ok(cardService.createCard(createDTO));
     }
 
+    @PostMapping(value = "/cards/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<BulkCardResultDTO>> createCards(@RequestBody List<CardCreateDTO> createDTOs) {
+        return ResponseEntity.ok(cardImportService.importCards(createDTOs));
+    }
+
+    @PostMapping(value = "/cards/bulk", consumes = "text/csv")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<BulkCardResultDTO>> createCardsFromCsv(InputStream csv) throws IOException {
+        return ResponseEntity.ok(cardImportService.importCsv(csv));
+    }
+
     @PutMapping("/cards/{cardId}/activate")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<Void> activateCard(@PathVariable Long cardId) {
-        cardService.activateCard(cardId);
+    public ResponseEntity<Void> activateCard(@AuthenticationPrincipal UserPrincipal principal, @PathVariable Long cardId) {
+        cardService.activateCard(principal, cardId);
         return ResponseEntity.ok().build();
     }
 
     @PutMapping("/cards/{cardId}/block")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<Void> blockCard(@PathVariable Long cardId) {
-        cardService.blockCard(cardId);
+    public ResponseEntity<Void> blockCard(@AuthenticationPrincipal UserPrincipal principal, @PathVariable Long cardId) {
+        cardService.blockCard(principal, cardId);
         return ResponseEntity.ok().build();
     }
 
     @DeleteMapping("/cards/{cardId}")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<Void> deleteCard(@PathVariable Long cardId) {
-        cardService.deleteCard(cardId);
+    public ResponseEntity<Void> deleteCard(@AuthenticationPrincipal UserPrincipal principal, @PathVariable Long cardId) {
+        cardService.deleteCard(principal, cardId);
         return ResponseEntity.ok().build();
     }
 
+    // totalElements — приблизительное (CardCountRegistry); slice=true — без него
     @GetMapping("/cards")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<Page<CardDTO>> getAllCards(Pageable pageable) {
-        return ResponseEntity.ok(cardService.getAllCards(pageable));
+    public ResponseEntity<Slice<CardDTO>> getAllCards(@AuthenticationPrincipal UserPrincipal principal,
+                                                      @RequestParam(defaultValue = "false") boolean slice,
+                                                      Pageable pageable) {
+        return ResponseEntity.ok(slice
+                ? cardService.getAllCardsSlice(principal, pageable)
+                : cardService.getAllCards(principal, pageable));
+    }
+
+    @GetMapping("/cards/counts")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<CardStatus, Long>> getCardCounts(@AuthenticationPrincipal UserPrincipal principal) {
+        return ResponseEntity.ok(cardService.getCardCounts(principal));
+    }
+
+    // Keyset-вариант списка карт: курсор next вместо номера страницы, без OFFSET и COUNT
+    @GetMapping("/cards/scroll")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<CursorPageDTO<CardDTO>> scrollCards(@AuthenticationPrincipal UserPrincipal principal,
+                                                              @RequestParam(defaultValue = "id") String sort,
+                                                              @RequestParam(required = false) String cursor,
+                                                              @RequestParam(defaultValue = "20") int size,
+                                                              @RequestParam(defaultValue = "false") boolean withTotal) {
+        return ResponseEntity.ok(cardService.scrollAllCards(principal, sort, cursor, size, withTotal));
+    }
+
+    // Все карты одним ответом для сверки вместо постраничного обхода /cards: строки пишутся по мере чтения из БД.
+    // format — ndjson (объект CardDTO на строку) или csv
+    @GetMapping("/cards/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportCards(@RequestParam(defaultValue = "ndjson") String format) {
+        ExportService.Format exportFormat = ExportService.Format.parse(format);
+        return exportResponse("cards", exportFormat, out -> exportService.exportCards(exportFormat, out));
     }
 
     @PostMapping("/users")
@@ -86,13 +162,19 @@ public class    AdminController {
         }
         user.setPassword(passwordEncoder.encode(user.getPassword()));
         userRepository.save(user);
+        userDetailsService.evict(user.getUsername());
+        usernameIndex.add(user.getId(), user.getUsername());
         return ResponseEntity.ok("User created");
     }
 
     @DeleteMapping("/users/{userId}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Void> deleteUser(@PathVariable Long userId) {
-        userRepository.deleteById(userId);
+        String username = userRepository.findUsernameById(userId).orElse(null);
+        cardService.deleteUserWithCards(userId);
+        userDetailsService.evict(username);
+        usernameIndex.remove(userId);
+        tokenVersionRegistry.invalidate(userId);
         return ResponseEntity.ok().build();
     }
 
@@ -106,6 +188,8 @@ public class    AdminController {
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
         user.setPassword(passwordEncoder.encode(passwordDTO.getPassword()));
         userRepository.save(user);
+        // Токены, выданные со старым паролем, больше не принимаются; bump сбрасывает и кэш пользователя
+        tokenVersionRegistry.bump(userId);
         return ResponseEntity.ok("Password updated");
     }
 
@@ -124,37 +208,115 @@ public class    AdminController {
         }
         user.setRole(roleDTO.getRole());
         userRepository.save(user);
+        // Роль зашита в JWT: старые токены отзываются, новая роль действует после повторного входа
+        tokenVersionRegistry.bump(userId);
         return ResponseEntity.ok("Role updated");
     }
 
+    // Страница пользователей за два запроса: сами пользователи, затем их карты (или только количество карт)
+    // одним запросом по owner_id IN (...), без ленивой загрузки user.getCards() на каждого
     @GetMapping("/users")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<Page<UserDTO>> getUsers(@RequestParam(required = false) String username, Pageable pageable) {
+    public ResponseEntity<Page<UserDTO>> getUsers(@RequestParam(required = false) String username,
+                                                  @RequestParam(defaultValue = "false") boolean countsOnly,
+                                                  Pageable pageable) {
         Page<User> usersPage;
         if (username != null && !username.isEmpty()) {
-            usersPage = userRepository.findByUsernameContaining(username, pageable);
+            usersPage = findByUsernameContaining(username, pageable);
         } else {
             usersPage = userRepository.findAll(pageable);
         }
-        Page<UserDTO> userDTOPage = usersPage.map(user -> {
+        Map<Long, String> ownerNames = usersPage.stream()
+                .collect(Collectors.toMap(User::getId, User::getUsername));
+        Function<User, UserDTO> toDTO = userMapper(ownerNames, countsOnly);
+        return ResponseEntity.ok(usersPage.map(toDTO));
+    }
+
+    // Keyset-вариант списка пользователей; фильтр по username остаётся у постраничного /users
+    @GetMapping("/users/scroll")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<CursorPageDTO<UserDTO>> scrollUsers(@RequestParam(defaultValue = "id") String sort,
+                                                              @RequestParam(required = false) String cursor,
+                                                              @RequestParam(defaultValue = "20") int size,
+                                                              @RequestParam(defaultValue = "false") boolean withTotal,
+                                                              @RequestParam(defaultValue = "false") boolean countsOnly) {
+        int limit = Math.max(1, Math.min(size, CardService.MAX_SCROLL_SIZE));
+        // Лишняя строка показывает, есть ли следующая страница
+        Pageable fetch = PageRequest.of(0, limit + 1);
+        KeysetCursor after = cursor != null ? KeysetCursor.decode(cursor, sort) : null;
+        List<User> users;
+        Function<User, String> key;
+        switch (sort) {
+            case "id" -> {
+                users = userRepository.findAfterId(after != null ? after.getId() : 0L, fetch);
+                key = user -> "";
+            }
+            case "username" -> {
+                users = userRepository.findAfterUsername(after != null ? after.getKey() : "", fetch);
+                key = User::getUsername;
+            }
+            default -> throw new RuntimeException("Unsupported sort: " + sort);
+        }
+        CursorPageDTO<UserDTO> result = new CursorPageDTO<>();
+        if (users.size() > limit) {
+            users = users.subList(0, limit);
+            User last = users.get(limit - 1);
+            result.setNext(KeysetCursor.encode(sort, key.apply(last), last.getId()));
+        }
+        Map<Long, String> ownerNames = users.stream()
+                .collect(Collectors.toMap(User::getId, User::getUsername));
+        result.setContent(users.stream().map(userMapper(ownerNames, countsOnly)).toList());
+        if (withTotal) {
+            result.setTotal(userRepository.count());
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    @GetMapping("/users/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(defaultValue = "ndjson") String format) {
+        ExportService.Format exportFormat = ExportService.Format.parse(format);
+        return exportResponse("users", exportFormat, out -> exportService.exportUsers(exportFormat, out));
+    }
+
+    // Тело пишется после выхода из метода, в потоке async-обработки MVC (spring.mvc.async.request-timeout)
+    private static ResponseEntity<StreamingResponseBody> exportResponse(String name, ExportService.Format format,
+                                                                       StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + "." + format.getExtension() + "\"")
+                .body(body);
+    }
+
+    // Поиск подстроки по UsernameIndex: id совпавших известны без чтения users, в БД — только строки страницы
+    // (WHERE id IN (...)). Короткий запрос, незагруженный индекс или сортировка не по id — LIKE в БД, как раньше
+    private Page<User> findByUsernameContaining(String username, Pageable pageable) {
+        long[] matches = pageable.getSort().isUnsorted() ? usernameIndex.search(username) : null;
+        if (matches == null) {
+            return userRepository.findByUsernameContaining(username, pageable);
+        }
+        int from = pageable.isPaged() ? (int) Math.min(pageable.getOffset(), matches.length) : 0;
+        int to = pageable.isPaged() ? Math.min(from + pageable.getPageSize(), matches.length) : matches.length;
+        List<Long> pageIds = Arrays.stream(matches, from, to).boxed().toList();
+        List<User> users = pageIds.isEmpty() ? List.of() : userRepository.findByIdInOrderById(pageIds);
+        return new PageImpl<>(users, pageable, matches.length);
+    }
+
+    // Карты (или их количество) всех пользователей страницы загружаются одним запросом при создании маппера
+    private Function<User, UserDTO> userMapper(Map<Long, String> ownerNames, boolean countsOnly) {
+        Map<Long, Long> cardCounts = countsOnly ? cardService.countCardsByOwners(ownerNames.keySet()) : Map.of();
+        Map<Long, List<CardDTO>> cards = countsOnly ? Map.of() : cardService.getCardsByOwners(ownerNames);
+        return user -> {
             UserDTO dto = new UserDTO();
             dto.setId(user.getId());
             dto.setUsername(user.getUsername());
             dto.setRole(user.getRole());
-            dto.setCards(user.getCards().stream().map(card -> {
-                CardDTO cardDTO = new CardDTO();
-                cardDTO.setId(card.getId());
-                // Маскирование номера карты (последние 4 цифры видны)
-                String decryptedNumber = cardService.decryptCardNumber(card.getCardNumber()); // Предполагается, что метод есть
-                cardDTO.setMaskedCardNumber(String.format("**** **** **** %s", decryptedNumber.substring(12)));
-                cardDTO.setOwnerUsername(card.getOwner().getUsername()); // Имя владельца
-                cardDTO.setExpiryDate(card.getExpiryDate()); // Срок действия
-                cardDTO.setStatus(card.getStatus().name());
-                cardDTO.setBalance(card.getBalance());
-                return cardDTO;
-            }).collect(Collectors.toList()));
+            if (countsOnly) {
+                dto.setCardCount(cardCounts.getOrDefault(user.getId(), 0L));
+            } else {
+                dto.setCards(cards.getOrDefault(user.getId(), List.of()));
+            }
             return dto;
-        });
-        return ResponseEntity.ok(userDTOPage);
+        };
     }
-}
\ No newline at end of file
+}
@@ -2,12 +2,18 @@ package com.example.bankcards.controller;
 
 import com.example.bankcards.entity.User;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.CustomUserDetailsService;
+import com.example.bankcards.security.PasswordRehashService;
+import com.example.bankcards.security.TokenVersionRegistry;
+import com.example.bankcards.security.UserPrincipal;
+import com.example.bankcards.service.UsernameIndex;
 import com.example.bankcards.util.JwtUtil;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.BindingResult;
@@ -21,13 +27,23 @@ public class AuthController {
     private final JwtUtil jwtUtil;
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final TokenVersionRegistry tokenVersionRegistry;
+    private final CustomUserDetailsService userDetailsService;
+    private final PasswordRehashService passwordRehashService;
+    private final UsernameIndex usernameIndex;
 
     public AuthController(AuthenticationManager authenticationManager, JwtUtil jwtUtil,
-                          UserRepository userRepository, PasswordEncoder passwordEncoder) {
+                          UserRepository userRepository, PasswordEncoder passwordEncoder,
+                          TokenVersionRegistry tokenVersionRegistry, CustomUserDetailsService userDetailsService,
+                          PasswordRehashService passwordRehashService, UsernameIndex usernameIndex) {
         this.authenticationManager = authenticationManager;
         this.jwtUtil = jwtUtil;
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.tokenVersionRegistry = tokenVersionRegistry;
+        this.userDetailsService = userDetailsService;
+        this.passwordRehashService = passwordRehashService;
+        this.usernameIndex = usernameIndex;
     }
 
     @PostMapping("/register")
@@ -42,15 +58,30 @@ public class AuthController {
         user.setPassword(passwordEncoder.encode(user.getPassword()));
         user.setRole("USER"); // Можно добавить логику для роли ADMIN
         userRepository.save(user);
+        userDetailsService.evict(user.getUsername());
+        usernameIndex.add(user.getId(), user.getUsername());
 
-        return ResponseEntity.ok(jwtUtil.generateToken(user.getUsername()));
+        return ResponseEntity.ok(jwtUtil.generateToken(UserPrincipal.from(user)));
     }
 
     @PostMapping("/login")
     public ResponseEntity<String> login(@RequestBody User user) {
         Authentication authentication = authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(user.getUsername(), user.getPassword()));
-        String token = jwtUtil.generateToken(user.getUsername());
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        passwordRehashService.upgradeIfNeeded(principal, user.getPassword());
+        String token = jwtUtil.generateToken(principal);
         return ResponseEntity.ok(token);
     }
+
+    // Выход на всех устройствах: все выданные пользователю токены перестают приниматься сразу
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof UserPrincipal principal)) {
+            return ResponseEntity.status(401).build();
+        }
+        tokenVersionRegistry.bump(principal.getId());
+        return ResponseEntity.ok().build();
+    }
 }
\ No newline at end of file
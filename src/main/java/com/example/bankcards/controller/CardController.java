@@ -4,12 +4,13 @@ package com.example.bankcards.controller;
 import com.example.bankcards.dto.CardCreateDTO;
 import com.example.bankcards.dto.CardDTO;
 import com.example.bankcards.dto.TransferRequestDTO;
-import com.example.bankcards.exception.ResourceNotFoundException;
+import com.example.bankcards.security.UserPrincipal;
 import com.example.bankcards.service.CardService;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -24,46 +25,62 @@ public class CardController {
         this.cardService = cardService;
     }
 
+    // slice=true — без общего числа (и без COUNT): только content и признак следующей страницы
     @GetMapping("/user/cards")
     @PreAuthorize("hasRole('USER')")
-    public ResponseEntity<Page<CardDTO>> getUserCards(@RequestParam(required = false) String search, Pageable pageable) {
+    public ResponseEntity<Slice<CardDTO>> getUserCards(@AuthenticationPrincipal UserPrincipal principal,
+                                                       @RequestParam(required = false) String search,
+                                                       @RequestParam(defaultValue = "false") boolean slice,
+                                                       Pageable pageable) {
         if (search != null && !search.isEmpty()) {
-            return ResponseEntity.ok(cardService.getUserCardsBySearch(search, pageable));
+            return ResponseEntity.ok(slice
+                    ? cardService.getUserCardsBySearchSlice(principal, search, pageable)
+                    : cardService.getUserCardsBySearch(principal, search, pageable));
         }
-        return ResponseEntity.ok(cardService.getUserCards(pageable));
+        return ResponseEntity.ok(slice
+                ? cardService.getUserCardsSlice(principal, pageable)
+                : cardService.getUserCards(principal, pageable));
     }
 
     @PostMapping("/cards/{cardId}/block")
     @PreAuthorize("hasRole('USER')")
-    public ResponseEntity<Void> requestBlockCard(@PathVariable Long cardId) {
-        CardDTO card = cardService.getUserCards(Pageable.unpaged())
-                .getContent().stream()
-                .filter(c -> c.getId().equals(cardId))
-                .findFirst()
-                .orElseThrow(() -> new ResourceNotFoundException("Card not found or not owned"));
-        cardService.blockCard(cardId);
+    public ResponseEntity<Void> requestBlockCard(@AuthenticationPrincipal UserPrincipal principal, @PathVariable Long cardId) {
+        // Владелец проверяется в самом UPDATE; чужая или несуществующая карта — 404
+        cardService.blockCard(principal, cardId);
         return ResponseEntity.ok().build();
     }
 
     @PostMapping("/user/transfer")
     @PreAuthorize("hasRole('USER')")
-    public ResponseEntity<Void> transfer(@RequestBody TransferRequestDTO request) {
-        cardService.transfer(request.getFromCardId(), request.getToCardId(), request.getAmount());
+    public ResponseEntity<Void> transfer(@AuthenticationPrincipal UserPrincipal principal,
+                                         @RequestBody TransferRequestDTO request,
+                                         @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        cardService.transfer(principal, request.getFromCardId(), request.getToCardId(), request.getAmount(), idempotencyKey);
         return ResponseEntity.ok().build();
     }
 
 
     @GetMapping("/cards/{cardId}/balance")
     @PreAuthorize("hasRole('USER')")
-    public ResponseEntity<Double> getCardBalance(@PathVariable Long cardId) {
-        return ResponseEntity.ok(cardService.getCardBalance(cardId));
+    public ResponseEntity<Double> getCardBalance(@AuthenticationPrincipal UserPrincipal principal, @PathVariable Long cardId) {
+        return ResponseEntity.ok(cardService.getCardBalance(principal, cardId));
+    }
+
+    @GetMapping("/cards/{cardId}/number")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<String> revealCardNumber(@AuthenticationPrincipal UserPrincipal principal, @PathVariable Long cardId) {
+        return ResponseEntity.ok(cardService.revealCardNumber(principal, cardId));
     }
 
     @GetMapping("/cards/search")
     @PreAuthorize("hasRole('USER')")
-    public ResponseEntity<Page<CardDTO>> searchUserCards(Pageable pageable) {
+    public ResponseEntity<Slice<CardDTO>> searchUserCards(@AuthenticationPrincipal UserPrincipal principal,
+                                                          @RequestParam(defaultValue = "false") boolean slice,
+                                                          Pageable pageable) {
         try {
-            Page<CardDTO> cards = cardService.getUserCardsBySearch(pageable);
+            Slice<CardDTO> cards = slice
+                    ? cardService.getUserCardsBySearchSlice(principal, pageable)
+                    : cardService.getUserCardsBySearch(principal, pageable);
             return ResponseEntity.ok(cards);
         } catch (Exception e) {
             e.printStackTrace();
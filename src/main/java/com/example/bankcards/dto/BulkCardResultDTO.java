@@ -0,0 +1,10 @@
+package com.example.bankcards.dto;
+
+import lombok.Data;
+
+@Data
+public class BulkCardResultDTO {
+    private int row; // Номер строки во входных данных, начиная с 1
+    private CardDTO card; // Заполняется при успешном выпуске
+    private String error;
+}
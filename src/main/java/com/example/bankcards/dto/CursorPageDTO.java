@@ -0,0 +1,14 @@
+package com.example.bankcards.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class CursorPageDTO<T> {
+    private List<T> content;
+    private String next; // Курсор следующей страницы; null — это последняя
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long total; // Только при withTotal=true: COUNT(*) считается лишь по явному запросу
+}
@@ -1,5 +1,6 @@
 package com.example.bankcards.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 
 import java.util.List;
@@ -9,5 +10,8 @@ public class UserDTO {
     private Long id;
     private String username;
     private String role;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<CardDTO> cards;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long cardCount; // Заполняется вместо cards при countsOnly=true
 }
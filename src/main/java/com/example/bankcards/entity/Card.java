@@ -9,13 +9,23 @@ import java.time.LocalDate;
 @Table(name = "cards")
 public class Card {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "card_id_seq")
+    @SequenceGenerator(name = "card_id_seq", sequenceName = "card_id_seq", allocationSize = 50) // pooled, позволяет пакетную вставку
     private Long id;
 
     @Column(nullable = false, unique = true)
     private String cardNumber; // Зашифрованный номер карты
 
-    @ManyToOne
+    @Column(name = "pan_hmac", length = 64)
+    private String panHmac; // Blind index полного номера
+
+    @Column(name = "last4_hmac", length = 64)
+    private String last4Hmac; // Blind index последних 4 цифр
+
+    @Column(name = "last4", length = 4)
+    private String last4; // Последние 4 цифры для маскированного отображения
+
+    @ManyToOne(fetch = FetchType.LAZY) // Для проверки владельца достаточно owner_id, users не читается
     @JoinColumn(name = "owner_id", nullable = false)
     private User owner;
 
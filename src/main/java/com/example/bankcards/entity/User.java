@@ -25,6 +25,11 @@ public class User {
     @Column(nullable = false)
     private String role; // ADMIN или USER
 
+    // Версия, зашитая в JWT; увеличение отзывает выданные токены. Меняется только TokenVersionRegistry.bump
+    // (UPDATE ... token_version + 1): save() пользователя не должен записать обратно прочитанное ранее значение
+    @Column(name = "token_version", nullable = false, insertable = false, updatable = false)
+    private int tokenVersion;
+
     @OneToMany(mappedBy = "owner", cascade = CascadeType.ALL)
     private List<Card> cards;
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.example.bankcards.exception;
+
+// Перегрузка: запрос отклонён без выполнения, клиенту стоит повторить через retryAfterSeconds
+public class ServiceUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public ServiceUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -3,15 +3,109 @@ package com.example.bankcards.repository;
 
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.CardStatus;
-import com.example.bankcards.entity.User;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 public interface CardRepository extends JpaRepository<Card, Long> {
-    boolean existsByCardNumber(String cardNumber);
-    Page<Card> findByOwner(User owner, Pageable pageable);
-    Page<Card> findByOwnerAndCardNumberContaining(User owner, String query, Pageable pageable);
-    Page<Card> findByOwnerAndStatus(User owner, CardStatus status, Pageable pageable);
+    // Списки карт читаются проекциями: только колонки cards, нужные CardDTO, без сущностей в persistence context
+    String SUMMARY_SELECT = "SELECT c.id AS id, c.owner.id AS ownerId, c.last4 AS last4, c.cardNumber AS cardNumber, "
+            + "c.expiryDate AS expiryDate, c.status AS status, c.balance AS balance";
+
+    // Выборки по owner_id из токена: без join users, имя владельца берётся из principal.
+    // Slice — без COUNT; общее число, когда оно нужно, считается отдельными count-методами ниже
+    @Query(SUMMARY_SELECT + " FROM Card c WHERE c.owner.id = :ownerId")
+    Slice<CardSummary> findSummariesByOwnerId(@Param("ownerId") Long ownerId, Pageable pageable);
+
+    @Query(SUMMARY_SELECT + " FROM Card c WHERE c.owner.id = :ownerId AND c.panHmac = :panHmac")
+    Slice<CardSummary> findSummariesByOwnerIdAndPanHmac(@Param("ownerId") Long ownerId, @Param("panHmac") String panHmac,
+                                                        Pageable pageable);
+
+    @Query(SUMMARY_SELECT + " FROM Card c WHERE c.owner.id = :ownerId AND c.last4Hmac = :last4Hmac")
+    Slice<CardSummary> findSummariesByOwnerIdAndLast4Hmac(@Param("ownerId") Long ownerId, @Param("last4Hmac") String last4Hmac,
+                                                          Pageable pageable);
+
+    @Query(SUMMARY_SELECT + " FROM Card c WHERE c.owner.id = :ownerId AND c.status = :status")
+    Slice<CardSummary> findSummariesByOwnerIdAndStatus(@Param("ownerId") Long ownerId, @Param("status") CardStatus status,
+                                                       Pageable pageable);
+
+    long countByOwnerId(Long ownerId);
+    long countByOwnerIdAndPanHmac(Long ownerId, String panHmac);
+    long countByOwnerIdAndLast4Hmac(Long ownerId, String last4Hmac);
+    long countByOwnerIdAndStatus(Long ownerId, CardStatus status);
+
+    // Админский список показывает имя владельца: из users читается только username, join в том же запросе.
+    // Общее число для админки — приблизительное, из CardCountRegistry
+    @Query(SUMMARY_SELECT + ", o.username AS ownerUsername FROM Card c JOIN c.owner o")
+    Slice<CardWithOwner> findAllWithOwner(Pageable pageable);
+
+    // Keyset-пагинация того же списка: строки строго после (ключ, id) последней строки предыдущей страницы,
+    // сразу с нужного места индекса — без OFFSET и без COUNT. limit — PageRequest.of(0, n) без сортировки.
+    @Query(SUMMARY_SELECT + ", o.username AS ownerUsername FROM Card c JOIN c.owner o "
+            + "WHERE c.id > :afterId ORDER BY c.id")
+    List<CardWithOwner> findWithOwnerAfterId(@Param("afterId") long afterId, Pageable limit);
+
+    // (expiry_date, id) > (:afterDate, :afterId), записанное через >= по первой колонке:
+    // так условие гарантированно становится границей сканирования idx_cards_expiry_date_id
+    @Query(SUMMARY_SELECT + ", o.username AS ownerUsername FROM Card c JOIN c.owner o "
+            + "WHERE c.expiryDate >= :afterDate AND (c.expiryDate > :afterDate OR c.id > :afterId) "
+            + "ORDER BY c.expiryDate, c.id")
+    List<CardWithOwner> findWithOwnerAfterExpiryDate(@Param("afterDate") LocalDate afterDate,
+                                                     @Param("afterId") long afterId, Pageable limit);
+
+    // Карты сразу нескольких владельцев одним запросом (страница пользователей в админке)
+    @Query(SUMMARY_SELECT + " FROM Card c WHERE c.owner.id IN :ownerIds ORDER BY c.id")
+    List<CardSummary> findSummariesByOwnerIdIn(@Param("ownerIds") Collection<Long> ownerIds);
+
+    @Query("SELECT c.owner.id AS ownerId, COUNT(c) AS cardCount FROM Card c "
+            + "WHERE c.owner.id IN :ownerIds GROUP BY c.owner.id")
+    List<OwnerCardCount> countByOwnerIdIn(@Param("ownerIds") Collection<Long> ownerIds);
+
+    @Query("SELECT c.owner.id FROM Card c WHERE c.id = :id")
+    Optional<Long> findOwnerIdById(@Param("id") Long id);
+
+    // Смена статуса одним запросом с возвратом прежнего статуса (для счётчиков CardCountRegistry).
+    // Прежний статус читается в CTE под блокировкой строки: параллельная смена статуса той же карты ждёт коммита
+    // и получает уже новый статус. Пусто — карты нет (или она чужая). Запрос возвращает строки, поэтому объявлен
+    // без @Modifying (тот допускает только число строк) и вызывается в транзакции CardService
+    @Query(value = "WITH old AS (SELECT id, status FROM cards WHERE id = :id AND owner_id = :ownerId FOR UPDATE) "
+            + "UPDATE cards c SET status = :status FROM old WHERE c.id = old.id RETURNING old.status", nativeQuery = true)
+    Optional<String> updateStatusForOwner(@Param("id") Long id, @Param("ownerId") Long ownerId, @Param("status") String status);
+
+    @Query(value = "WITH old AS (SELECT id, status FROM cards WHERE id = :id FOR UPDATE) "
+            + "UPDATE cards c SET status = :status FROM old WHERE c.id = old.id RETURNING old.status", nativeQuery = true)
+    Optional<String> updateStatus(@Param("id") Long id, @Param("status") String status);
+
+    // Карты удаляемого владельца со статусами удалённых строк — для CardCountRegistry
+    @Query(value = "DELETE FROM cards WHERE owner_id = :ownerId RETURNING status", nativeQuery = true)
+    List<String> deleteByOwnerIdReturningStatus(@Param("ownerId") Long ownerId);
+
+    // Балансы карт группового коммита: строки блокируются одним запросом в порядке id — в том же глобальном порядке,
+    // что и в TransferEngine.transfer, поэтому группа не взаимоблокируется с одиночными переводами
+    @Query(value = "SELECT id, owner_id AS \"ownerId\", balance FROM cards WHERE id IN (:ids) ORDER BY id FOR UPDATE",
+            nativeQuery = true)
+    List<LockedBalance> lockBalances(@Param("ids") Collection<Long> ids);
+
+    // Только для строк, уже заблокированных lockBalances
+    @Modifying
+    @Query("UPDATE Card c SET c.balance = :balance WHERE c.id = :id")
+    int setBalance(@Param("id") Long id, @Param("balance") Double balance);
+
+    // Условное списание: проверка владельца и баланса и изменение — одним UPDATE под блокировкой строки
+    @Modifying
+    @Query("UPDATE Card c SET c.balance = c.balance - :amount "
+            + "WHERE c.id = :id AND c.owner.id = :ownerId AND c.balance >= :amount")
+    int debit(@Param("id") Long id, @Param("ownerId") Long ownerId, @Param("amount") Double amount);
 
+    @Modifying
+    @Query("UPDATE Card c SET c.balance = c.balance + :amount WHERE c.id = :id AND c.owner.id = :ownerId")
+    int credit(@Param("id") Long id, @Param("ownerId") Long ownerId, @Param("amount") Double amount);
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CardStatus;
+
+import java.time.LocalDate;
+
+// Проекция карты для списков: только колонки cards, без сущности Card и без владельца
+public interface CardSummary {
+    Long getId();
+
+    Long getOwnerId();
+
+    String getLast4();
+
+    // Зашифрованный номер; нужен только строкам, у которых ещё нет last4
+    String getCardNumber();
+
+    LocalDate getExpiryDate();
+
+    CardStatus getStatus();
+
+    Double getBalance();
+}
@@ -0,0 +1,6 @@
+package com.example.bankcards.repository;
+
+// Карта с именем владельца для админского списка: username приходит join-ом, сущность User не загружается
+public interface CardWithOwner extends CardSummary {
+    String getOwnerUsername();
+}
@@ -0,0 +1,9 @@
+package com.example.bankcards.repository;
+
+public interface LockedBalance {
+    Long getId();
+
+    Long getOwnerId();
+
+    Double getBalance();
+}
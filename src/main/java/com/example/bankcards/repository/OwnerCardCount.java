@@ -0,0 +1,7 @@
+package com.example.bankcards.repository;
+
+public interface OwnerCardCount {
+    Long getOwnerId();
+
+    Long getCardCount();
+}
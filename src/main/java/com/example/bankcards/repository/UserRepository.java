@@ -4,11 +4,36 @@ import com.example.bankcards.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     Page<User> findByUsernameContaining(String username, Pageable pageable);
     boolean existsByUsername(String username);
+    List<User> findByUsernameIn(Collection<String> usernames);
+    List<User> findByIdInOrderById(Collection<Long> ids);
+
+    // Keyset-пагинация админского списка пользователей (см. CardRepository.findWithOwnerAfterId).
+    // username уникален, поэтому второй ключ сортировки не нужен
+    @Query("SELECT u FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    List<User> findAfterId(@Param("afterId") long afterId, Pageable limit);
+
+    @Query("SELECT u FROM User u WHERE u.username > :afterUsername ORDER BY u.username")
+    List<User> findAfterUsername(@Param("afterUsername") String afterUsername, Pageable limit);
+
+    @Query("SELECT u.username FROM User u WHERE u.id = :id")
+    Optional<String> findUsernameById(@Param("id") Long id);
+
+    // Замена хэша при перехэшировании: только если пароль не меняли с момента входа
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.password = :newHash WHERE u.id = :id AND u.password = :oldHash")
+    int updatePasswordIfUnchanged(@Param("id") Long id, @Param("oldHash") String oldHash, @Param("newHash") String newHash);
 }
\ No newline at end of file
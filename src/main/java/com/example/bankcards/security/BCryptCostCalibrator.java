@@ -0,0 +1,44 @@
+package com.example.bankcards.security;
+
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+import java.time.Duration;
+
+// Подбор cost BCrypt под целевое время хэширования на текущем железе.
+// Время растёт вдвое на каждую единицу cost, поэтому достаточно замерить минимальный cost
+// и выбрать наибольший, у которого оценка укладывается в цель. Ниже minCost не опускаемся, даже если железо медленное.
+public final class BCryptCostCalibrator {
+
+    private static final int SAMPLES = 3;
+    private static final String SAMPLE_PASSWORD = "calibration-password";
+
+    private BCryptCostCalibrator() {
+    }
+
+    public static int calibrate(Duration target, int minCost, int maxCost) {
+        long baseNanos = measure(minCost);
+        return pick(baseNanos, target.toNanos(), minCost, maxCost);
+    }
+
+    static int pick(long baseNanos, long targetNanos, int minCost, int maxCost) {
+        int cost = minCost;
+        long estimate = baseNanos;
+        while (cost < maxCost && estimate * 2 <= targetNanos) {
+            estimate *= 2;
+            cost++;
+        }
+        return cost;
+    }
+
+    // Минимум из нескольких замеров: первый вызов включает прогрев, а шум только увеличивает время
+    private static long measure(int cost) {
+        String salt = BCrypt.gensalt(cost);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            BCrypt.hashpw(SAMPLE_PASSWORD, salt);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
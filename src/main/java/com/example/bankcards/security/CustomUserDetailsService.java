@@ -2,31 +2,97 @@ package com.example.bankcards.security;
 
 import com.example.bankcards.entity.User;
 import com.example.bankcards.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
-
-import java.util.Collections;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
+// Загрузка пользователя для входа по паролю с ограниченным кэшем по username.
+// UserPrincipal неизменяем, поэтому один экземпляр безопасно отдаётся всем вызывающим.
+// Любое изменение пользователя должно сопровождаться evict(username) после сохранения:
+// evict снимает выполняющуюся загрузку этого ключа, и её результат в кэш уже не попадёт.
+// Смена token_version (TokenVersionRegistry.bump) вызывает evict сама.
+// Загрузка идёт вне Cache.get(key, loader): тот выполняет загрузчик внутри ConcurrentHashMap.compute (synchronized),
+// и на виртуальных потоках запрос к БД закреплял бы поток-носитель. Одновременные промахи по одному ключу
+// ждут первую загрузку через inFlight, как в IdempotencyService.
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final Cache<String, UserPrincipal> cache;
+    private final ConcurrentHashMap<String, CompletableFuture<UserPrincipal>> inFlight = new ConcurrentHashMap<>();
 
-    public CustomUserDetailsService(UserRepository userRepository) {
+    public CustomUserDetailsService(UserRepository userRepository, MeterRegistry meterRegistry,
+                                    @Value("${security.user-cache.size:100000}") long cacheSize,
+                                    @Value("${security.user-cache.ttl-minutes:10}") long ttlMinutes) {
         this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "userDetails");
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        UserPrincipal cached = cache.getIfPresent(username);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<UserPrincipal> mine = new CompletableFuture<>();
+        CompletableFuture<UserPrincipal> running = inFlight.putIfAbsent(username, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        try {
+            // Отсутствующие пользователи не кэшируются: исключение проходит наружу
+            UserPrincipal loaded = load(username);
+            // Кладём в кэш, только если загрузку не снял evict
+            inFlight.computeIfPresent(username, (key, current) -> {
+                if (current == mine) {
+                    cache.put(key, loaded);
+                }
+                return current;
+            });
+            mine.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(username, mine);
+        }
+    }
+
+    public void evict(String username) {
+        if (username != null) {
+            // Сначала снимаем загрузку, потом чистим кэш: что бы она ни успела положить, будет удалено
+            inFlight.remove(username);
+            cache.invalidate(username);
+        }
+    }
+
+    private UserPrincipal load(String username) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
-        return new org.springframework.security.core.userdetails.User(
-                user.getUsername(),
-                user.getPassword(),
-                Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + user.getRole())));
+        return UserPrincipal.from(user);
     }
 }
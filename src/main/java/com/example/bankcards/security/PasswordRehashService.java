@@ -0,0 +1,105 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.exception.ServiceUnavailableException;
+import com.example.bankcards.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Перехэширование пароля после успешного входа, если сохранённый хэш устарел (другой алгоритм или меньший cost).
+// Выполняется в фоне, ответ на вход его не ждёт. Задача необязательная: при переполненной очереди или перегрузке
+// она отбрасывается и повторится при следующем входе. Хэш обновляется только если не изменился с момента входа.
+@Component
+public class PasswordRehashService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordRehashService.class);
+
+    private final PasswordEncoder passwordEncoder;
+    private final UserRepository userRepository;
+    private final CustomUserDetailsService userDetailsService;
+    private final ThreadPoolExecutor executor;
+
+    private final Counter upgraded;
+    private final Counter skipped;
+    private final Counter dropped;
+    private final Counter failed;
+
+    public PasswordRehashService(PasswordEncoder passwordEncoder, UserRepository userRepository,
+                                 CustomUserDetailsService userDetailsService, MeterRegistry meterRegistry,
+                                 @Value("${security.password-encoder.rehash-queue-capacity:1000}") int queueCapacity) {
+        this.passwordEncoder = passwordEncoder;
+        this.userRepository = userRepository;
+        this.userDetailsService = userDetailsService;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-rehash");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.upgraded = outcome(meterRegistry, "upgraded");
+        this.skipped = outcome(meterRegistry, "skipped");
+        this.dropped = outcome(meterRegistry, "dropped");
+        this.failed = outcome(meterRegistry, "failed");
+    }
+
+    // principal — результат аутентификации: его пароль — хэш, с которым только что сверили rawPassword
+    public void upgradeIfNeeded(UserPrincipal principal, String rawPassword) {
+        String currentHash = principal.getPassword();
+        if (currentHash == null || !passwordEncoder.upgradeEncoding(currentHash)) {
+            return;
+        }
+        try {
+            executor.execute(() -> rehash(principal.getId(), principal.getUsername(), currentHash, rawPassword));
+        } catch (RejectedExecutionException e) {
+            dropped.increment();
+        }
+    }
+
+    private void rehash(Long userId, String username, String currentHash, String rawPassword) {
+        try {
+            String newHash = passwordEncoder.encode(rawPassword);
+            if (userRepository.updatePasswordIfUnchanged(userId, currentHash, newHash) == 1) {
+                userDetailsService.evict(username);
+                upgraded.increment();
+            } else {
+                // Пароль сменили или его уже перехэшировал параллельный вход
+                skipped.increment();
+            }
+        } catch (ServiceUnavailableException e) {
+            // Пул BCrypt перегружен — то же, что переполненная очередь: повторится при следующем входе
+            dropped.increment();
+            logger.debug("Password rehash dropped for user {}: {}", userId, e.getMessage());
+        } catch (RuntimeException e) {
+            failed.increment();
+            logger.warn("Password rehash failed for user {}", userId, e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    int pending() {
+        return executor.getQueue().size() + executor.getActiveCount();
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("password.rehash")
+                .description("Password hash upgrades after login, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.bankcards.security;
+
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+
+// Текущая users.token_version по id пользователя. Фильтр сверяет с ней claim "ver" вместо загрузки пользователя.
+// Хранилище — открытая адресация на long[]/int[] (без упаковки в Long/Integer), чтение — оптимистичное через StampedLock:
+// проверка токена не берёт блокировку и ничего не аллоцирует. Все версии загружаются при старте;
+// промах (пользователь создан после старта) дочитывается из БД. Источник истины и хранилище между рестартами — колонка в users.
+// Узлов несколько: bump и invalidate публикуют новую версию через NOTIFY, каждый узел слушает канал (LISTEN) на отдельном
+// соединении и применяет чужие изменения сразу после их коммита. После потери соединения версии сверяются с БД заново,
+// поэтому пропущенные уведомления не оставляют узел с устаревшими версиями.
+@Component
+public class TokenVersionRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(TokenVersionRegistry.class);
+
+    // Отзыв без строки в БД (пользователь удалён); версии в users неотрицательны, поэтому не совпадёт ни с одним токеном
+    static final int REVOKED = -1;
+    static final String CHANNEL = "token_version";
+    private static final int MISSING = Integer.MIN_VALUE;
+    private static final long EMPTY_KEY = 0; // id пользователей начинаются с 1
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int POLL_TIMEOUT_MS = 500;
+    private static final long RECONNECT_PAUSE_MS = 1_000;
+    private static final long MAX_RECONNECT_PAUSE_MS = 30_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CustomUserDetailsService userDetailsService;
+    private final DataSourceProperties dataSourceProperties;
+    private final boolean listen;
+    private final StampedLock lock = new StampedLock();
+    private Table table = new Table(INITIAL_CAPACITY);
+
+    private volatile boolean listening;
+    private Thread listener;
+
+    public TokenVersionRegistry(JdbcTemplate jdbcTemplate, CustomUserDetailsService userDetailsService,
+                                DataSourceProperties dataSourceProperties,
+                                @Value("${security.token-version.listen:true}") boolean listen) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userDetailsService = userDetailsService;
+        this.dataSourceProperties = dataSourceProperties;
+        this.listen = listen;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        if (!listen) {
+            reload(false);
+            return;
+        }
+        // Загрузка — в потоке слушателя после LISTEN: изменения, сделанные во время загрузки, придут уведомлениями
+        listening = true;
+        listener = new Thread(this::listen, "token-version-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        listening = false;
+        if (listener != null) {
+            try {
+                listener.join(POLL_TIMEOUT_MS * 4L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isCurrent(long userId, int tokenVersion) {
+        if (userId == EMPTY_KEY) {
+            return false;
+        }
+        long stamp = lock.tryOptimisticRead();
+        int current = table.get(userId);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                current = table.get(userId);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (current == MISSING) {
+            current = load(userId);
+        }
+        return current != REVOKED && current == tokenVersion;
+    }
+
+    // Отзывает все выданные пользователю токены (смена пароля/роли, выход).
+    // Кэш CustomUserDetailsService сбрасывается здесь же, после записи новой версии: иначе вход отдал бы
+    // закэшированного UserPrincipal со старой версией, и выданный токен сразу отклонялся бы фильтром.
+    // Уведомление уходит тем же запросом и доставляется другим узлам при коммите UPDATE
+    public void bump(long userId) {
+        List<Map.Entry<Integer, String>> updated = jdbcTemplate.query(
+                "WITH u AS (UPDATE users SET token_version = token_version + 1 WHERE id = ? "
+                        + "RETURNING id, token_version, username) "
+                        + "SELECT token_version, username, pg_notify('" + CHANNEL + "', "
+                        + "id || ':' || token_version || ':' || username) FROM u",
+                (rs, row) -> Map.entry(rs.getInt(1), rs.getString(2)), userId);
+        if (updated.isEmpty()) {
+            putIfNewer(userId, REVOKED);
+            return;
+        }
+        // Уведомление о ещё более новой версии с другого узла могло прийти раньше — она не затирается
+        putIfNewer(userId, updated.get(0).getKey());
+        userDetailsService.evict(updated.get(0).getValue());
+    }
+
+    // После удаления пользователя
+    public void invalidate(long userId) {
+        putIfNewer(userId, REVOKED);
+        jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", CHANNEL, userId + ":" + REVOKED + ":");
+    }
+
+    private void listen() {
+        long pause = RECONNECT_PAUSE_MS;
+        while (listening) {
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword());
+                 Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN " + CHANNEL);
+                // Уведомления, отправленные до LISTEN (старт или обрыв соединения), восполняются сверкой с БД
+                reload(true);
+                pause = RECONNECT_PAUSE_MS;
+                PGConnection notifications = connection.unwrap(PGConnection.class);
+                while (listening) {
+                    PGNotification[] received = notifications.getNotifications(POLL_TIMEOUT_MS);
+                    if (received != null) {
+                        for (PGNotification notification : received) {
+                            apply(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!listening) {
+                    return;
+                }
+                logger.warn("Token version listener failed, reconnecting in {} ms: {}", pause, e.getMessage());
+                try {
+                    Thread.sleep(pause);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                pause = Math.min(pause * 2, MAX_RECONNECT_PAUSE_MS);
+            }
+        }
+    }
+
+    // "id:версия:username"; username последним — в нём может быть двоеточие
+    private void apply(String payload) {
+        String[] parts = payload.split(":", 3);
+        putIfNewer(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+        if (parts.length == 3 && !parts[2].isEmpty()) {
+            userDetailsService.evict(parts[2]);
+        }
+    }
+
+    // Версии только растут, поэтому сверка и уведомления применяются в любом порядке: устаревшее значение не затрёт новое.
+    // При повторной сверке (revokeAbsent) известные пользователи, которых нет в БД, удалены — их токены отзываются.
+    // Отзываются только id не больше наибольшего прочитанного: пользователь, созданный во время запроса, не задевается
+    private void reload(boolean revokeAbsent) {
+        Set<Long> seen = revokeAbsent ? new HashSet<>() : null;
+        long[] maxId = {EMPTY_KEY};
+        jdbcTemplate.query("SELECT id, token_version FROM users", (RowCallbackHandler) rs -> {
+            long id = rs.getLong(1);
+            putIfNewer(id, rs.getInt(2));
+            if (seen != null) {
+                seen.add(id);
+                maxId[0] = Math.max(maxId[0], id);
+            }
+        });
+        if (seen == null) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            for (long key : table.keys) {
+                if (key != EMPTY_KEY && key <= maxId[0] && !seen.contains(key)) {
+                    table.put(key, REVOKED);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private int load(long userId) {
+        List<Integer> found = jdbcTemplate.queryForList("SELECT token_version FROM users WHERE id = ?", Integer.class, userId);
+        // id не переиспользуются, поэтому отсутствие пользователя можно запомнить
+        int version = found.isEmpty() ? REVOKED : found.get(0);
+        long stamp = lock.writeLock();
+        try {
+            // Если за время запроса версия уже записана (bump), она новее прочитанной
+            int current = table.get(userId);
+            if (current != MISSING) {
+                return current;
+            }
+            putLocked(userId, version);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return version;
+    }
+
+    private void putIfNewer(long userId, int version) {
+        if (userId == EMPTY_KEY) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            int current = table.get(userId);
+            // id не переиспользуются: отозванный пользователь не возвращается
+            if (current == MISSING || (current != REVOKED && (version == REVOKED || version > current))) {
+                putLocked(userId, version);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void putLocked(long userId, int version) {
+        if (!table.put(userId, version)) {
+            return;
+        }
+        // Заполнение не выше 1/2: пробы короткие и в таблице всегда есть пустая ячейка
+        if (table.size * 2 > table.keys.length) {
+            Table grown = new Table(table.keys.length * 2);
+            for (int i = 0; i < table.keys.length; i++) {
+                if (table.keys[i] != EMPTY_KEY) {
+                    grown.put(table.keys[i], table.values[i]);
+                }
+            }
+            table = grown;
+        }
+    }
+
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return table.size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Ключи и значения в одном объекте: при оптимистичном чтении массивы всегда одного поколения
+    private static final class Table {
+        final long[] keys;
+        final int[] values;
+        final int mask;
+        int size;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        int get(long key) {
+            for (int i = index(key), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                long k = keys[i];
+                if (k == key) {
+                    return values[i];
+                }
+                if (k == EMPTY_KEY) {
+                    return MISSING;
+                }
+            }
+            return MISSING;
+        }
+
+        // true, если ключ новый
+        boolean put(long key, int value) {
+            int i = index(key);
+            while (keys[i] != EMPTY_KEY) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            values[i] = value;
+            keys[i] = key;
+            size++;
+            return true;
+        }
+
+        private int index(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.User;
+import io.jsonwebtoken.Claims;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+
+// Аутентифицированный пользователь: при входе строится из users, на остальных запросах — из claims JWT без обращения к БД.
+// Пароль (хэш) есть только у экземпляров, загруженных из БД.
+public class UserPrincipal implements UserDetails {
+
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_ROLE = "role";
+    public static final String CLAIM_TOKEN_VERSION = "ver";
+
+    // Роли битовой маской: проверка роли — одна операция вместо перебора authorities
+    public static final int ROLE_USER = 1;
+    public static final int ROLE_ADMIN = 1 << 1;
+
+    private final Long id;
+    private final String username;
+    private final String password;
+    private final String role;
+    private final int tokenVersion;
+    private final int roles;
+    private final List<GrantedAuthority> authorities;
+
+    public UserPrincipal(Long id, String username, String password, String role, int tokenVersion) {
+        this.id = id;
+        this.username = username;
+        this.password = password;
+        this.role = role;
+        this.tokenVersion = tokenVersion;
+        this.roles = roleMask(role);
+        this.authorities = List.of(new SimpleGrantedAuthority("ROLE_" + role));
+    }
+
+    public static UserPrincipal from(User user) {
+        return new UserPrincipal(user.getId(), user.getUsername(), user.getPassword(), user.getRole(), user.getTokenVersion());
+    }
+
+    // null, если в токене нет нужных claims (токен выпущен до их появления)
+    public static UserPrincipal fromClaims(Claims claims) {
+        Object id = claims.get(CLAIM_USER_ID);
+        Object role = claims.get(CLAIM_ROLE);
+        Object version = claims.get(CLAIM_TOKEN_VERSION);
+        if (!(id instanceof Number) || !(role instanceof String) || !(version instanceof Number)) {
+            return null;
+        }
+        return new UserPrincipal(((Number) id).longValue(), claims.getSubject(), null,
+                (String) role, ((Number) version).intValue());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
+    public boolean hasRole(int roleMask) {
+        return (roles & roleMask) != 0;
+    }
+
+    public boolean isAdmin() {
+        return hasRole(ROLE_ADMIN);
+    }
+
+    static int roleMask(String role) {
+        if (role == null) {
+            return 0;
+        }
+        return switch (role) {
+            case "ADMIN" -> ROLE_ADMIN;
+            case "USER" -> ROLE_USER;
+            default -> 0;
+        };
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+}
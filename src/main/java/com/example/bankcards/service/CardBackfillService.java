@@ -0,0 +1,141 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.util.CardCipher;
+import com.example.bankcards.util.CardNumberHasher;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Фоновое заполнение last4 / pan_hmac / last4_hmac для карт, выпущенных до появления этих колонок.
+// Идёт порциями по id; строки отбираются по last4 IS NULL, поэтому после рестарта работа продолжается с места остановки.
+@Service
+public class CardBackfillService {
+    private static final Logger logger = LoggerFactory.getLogger(CardBackfillService.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CardCipher cardCipher;
+    private final CardNumberHasher cardNumberHasher;
+
+    @Value("${card.backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${card.backfill.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${card.backfill.pause-ms:50}")
+    private long pauseMs;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public CardBackfillService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                               CardCipher cardCipher, CardNumberHasher cardNumberHasher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cardCipher = cardCipher;
+        this.cardNumberHasher = cardNumberHasher;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::run, "card-backfill");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    private void run() {
+        long afterId = 0;
+        long chunks = 0;
+        try {
+            while (running) {
+                long from = afterId;
+                Long lastId = transactionTemplate.execute(status -> backfillChunk(from));
+                if (lastId == null) {
+                    break;
+                }
+                chunks++;
+                afterId = lastId;
+                Thread.sleep(pauseMs);
+            }
+            logger.info("Card backfill finished: {} chunks, last processed id {}", chunks, afterId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.info("Card backfill stopped at id {}", afterId);
+        } catch (Exception e) {
+            logger.error("Card backfill failed after id {} ({} chunks): {}", afterId, chunks, e.getMessage());
+        }
+    }
+
+    // Обрабатывает одну порцию после afterId; возвращает id последней строки или null, если строк не осталось
+    Long backfillChunk(long afterId) {
+        List<PendingCard> pending = jdbcTemplate.query(
+                "SELECT id, card_number FROM cards WHERE last4 IS NULL AND id > ? ORDER BY id LIMIT ?",
+                (rs, rowNum) -> new PendingCard(rs.getLong("id"), rs.getString("card_number")),
+                afterId, chunkSize);
+        if (pending.isEmpty()) {
+            return null;
+        }
+        List<String> cardNumbers;
+        try {
+            cardNumbers = cardCipher.decryptAll(pending.stream().map(PendingCard::encryptedNumber).toList());
+        } catch (RuntimeException e) {
+            cardNumbers = decryptEach(pending);
+        }
+        List<Object[]> updates = new ArrayList<>(pending.size());
+        for (int i = 0; i < pending.size(); i++) {
+            String cardNumber = cardNumbers.get(i);
+            if (cardNumber == null) {
+                continue;
+            }
+            String last4 = cardNumber.substring(12);
+            updates.add(new Object[]{last4, cardNumberHasher.hashPan(cardNumber),
+                    cardNumberHasher.hashLast4(last4), pending.get(i).id()});
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(
+                    "UPDATE cards SET last4 = ?, pan_hmac = ?, last4_hmac = ? WHERE id = ? AND last4 IS NULL",
+                    updates);
+        }
+        return pending.get(pending.size() - 1).id();
+    }
+
+    // Медленный путь для порции с битыми строками: такие строки пропускаем, чтобы не блокировать остальную миграцию
+    private List<String> decryptEach(List<PendingCard> pending) {
+        List<String> cardNumbers = new ArrayList<>(pending.size());
+        for (PendingCard card : pending) {
+            try {
+                cardNumbers.add(cardCipher.decrypt(card.encryptedNumber()));
+            } catch (RuntimeException e) {
+                logger.warn("Card {} skipped by backfill: {}", card.id(), e.getMessage());
+                cardNumbers.add(null);
+            }
+        }
+        return cardNumbers;
+    }
+
+    private record PendingCard(long id, String encryptedNumber) {
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.OwnerCardCount;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Приблизительное число карт для админки вместо COUNT(*) по всей таблице: по статусам и по владельцам.
+// Счётчики меняются на месте при выпуске, удалении и смене статуса (после коммита транзакции)
+// и периодически сверяются с БД. Гонки между сверкой и изменениями дают небольшое расхождение до следующей сверки.
+// Статусы загружаются при старте; счётчики владельцев — по требованию одним запросом на все промахи.
+@Component
+public class CardCountRegistry {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CardRepository cardRepository;
+    private final Map<CardStatus, AtomicLong> byStatus = new EnumMap<>(CardStatus.class);
+    // ownerId -> число карт; вытесненные и ещё не загруженные владельцы дочитываются из БД
+    private final Cache<Long, AtomicLong> byOwner;
+
+    public CardCountRegistry(JdbcTemplate jdbcTemplate, CardRepository cardRepository,
+                             @Value("${card.counts.owner-cache-size:100000}") long ownerCacheSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cardRepository = cardRepository;
+        for (CardStatus status : CardStatus.values()) {
+            byStatus.put(status, new AtomicLong());
+        }
+        this.byOwner = Caffeine.newBuilder().maximumSize(ownerCacheSize).build();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${card.counts.reconcile-interval-ms:300000}",
+            fixedDelayString = "${card.counts.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        Map<CardStatus, Long> counted = new EnumMap<>(CardStatus.class);
+        jdbcTemplate.query("SELECT status, COUNT(*) FROM cards GROUP BY status",
+                (RowCallbackHandler) rs -> counted.put(CardStatus.valueOf(rs.getString(1)), rs.getLong(2)));
+        for (CardStatus status : CardStatus.values()) {
+            byStatus.get(status).set(counted.getOrDefault(status, 0L));
+        }
+        // Владельцы перечитаются при следующем обращении
+        byOwner.invalidateAll();
+    }
+
+    public long total() {
+        long total = 0;
+        for (AtomicLong count : byStatus.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    public long countByStatus(CardStatus status) {
+        return byStatus.get(status).get();
+    }
+
+    // Для каждого из ownerIds, включая владельцев без карт (0)
+    public Map<Long, Long> countByOwners(Collection<Long> ownerIds) {
+        Map<Long, Long> counts = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long ownerId : ownerIds) {
+            AtomicLong count = byOwner.getIfPresent(ownerId);
+            if (count != null) {
+                counts.put(ownerId, count.get());
+            } else {
+                missing.add(ownerId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return counts;
+        }
+        Map<Long, Long> loaded = new HashMap<>();
+        missing.forEach(ownerId -> loaded.put(ownerId, 0L));
+        for (OwnerCardCount row : cardRepository.countByOwnerIdIn(missing)) {
+            loaded.put(row.getOwnerId(), row.getCardCount());
+        }
+        // Запрос выполнен вне кэша, здесь только putIfAbsent (см. docs/virtual-threads.md)
+        loaded.forEach((ownerId, count) -> {
+            AtomicLong existing = byOwner.asMap().putIfAbsent(ownerId, new AtomicLong(count));
+            counts.put(ownerId, existing != null ? existing.get() : count);
+        });
+        return counts;
+    }
+
+    public void cardCreated(long ownerId, CardStatus status) {
+        afterCommit(() -> {
+            byStatus.get(status).incrementAndGet();
+            AtomicLong count = byOwner.getIfPresent(ownerId);
+            if (count != null) {
+                count.incrementAndGet();
+            }
+        });
+    }
+
+    public void cardDeleted(long ownerId, CardStatus status) {
+        afterCommit(() -> {
+            byStatus.get(status).decrementAndGet();
+            AtomicLong count = byOwner.getIfPresent(ownerId);
+            if (count != null) {
+                count.decrementAndGet();
+            }
+        });
+    }
+
+    public void statusChanged(CardStatus from, CardStatus to) {
+        if (from == to) {
+            return;
+        }
+        afterCommit(() -> {
+            byStatus.get(from).decrementAndGet();
+            byStatus.get(to).incrementAndGet();
+        });
+    }
+
+    // Внутри транзакции — только после коммита: откатанные изменения не попадают в счётчики
+    private static void afterCommit(Runnable update) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+        });
+    }
+}
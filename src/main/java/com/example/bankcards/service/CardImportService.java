@@ -0,0 +1,101 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.BulkCardResultDTO;
+import com.example.bankcards.dto.CardCreateDTO;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Массовый выпуск карт: входные строки обрабатываются порциями, каждая порция — одна транзакция CardService.createCards
+@Service
+public class CardImportService {
+
+    static final int CHUNK_SIZE = 1000;
+    private static final String CSV_HEADER_PREFIX = "ownerUsername";
+
+    private final CardService cardService;
+
+    public CardImportService(CardService cardService) {
+        this.cardService = cardService;
+    }
+
+    public List<BulkCardResultDTO> importCards(List<CardCreateDTO> createDTOs) {
+        List<BulkCardResultDTO> results = new ArrayList<>(createDTOs.size());
+        for (int from = 0; from < createDTOs.size(); from += CHUNK_SIZE) {
+            List<CardCreateDTO> chunk = createDTOs.subList(from, Math.min(from + CHUNK_SIZE, createDTOs.size()));
+            List<BulkCardResultDTO> chunkResults = cardService.createCards(chunk);
+            for (int i = 0; i < chunkResults.size(); i++) {
+                chunkResults.get(i).setRow(from + i + 1);
+            }
+            results.addAll(chunkResults);
+        }
+        return results;
+    }
+
+    // CSV: ownerUsername,expiryDate(yyyy-MM-dd),initialBalance; строка заголовка необязательна.
+    // Поток читается построчно, и из входных строк в памяти держится только текущая порция. Результаты копятся
+    // до конца импорта: ответ — один JSON-массив, в нём BulkCardResultDTO с CardDTO на каждую строку.
+    public List<BulkCardResultDTO> importCsv(InputStream csv) throws IOException {
+        List<BulkCardResultDTO> results = new ArrayList<>();
+        List<CardCreateDTO> chunk = new ArrayList<>(CHUNK_SIZE);
+        List<Integer> chunkRows = new ArrayList<>(CHUNK_SIZE);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8));
+        String line;
+        int row = 0;
+        while ((line = reader.readLine()) != null) {
+            row++;
+            if (line.isBlank() || (row == 1 && line.startsWith(CSV_HEADER_PREFIX))) {
+                continue;
+            }
+            try {
+                chunk.add(parseLine(line));
+                chunkRows.add(row);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                BulkCardResultDTO result = new BulkCardResultDTO();
+                result.setRow(row);
+                result.setError("Invalid CSV row: " + e.getMessage());
+                results.add(result);
+            }
+            if (chunk.size() == CHUNK_SIZE) {
+                flush(chunk, chunkRows, results);
+            }
+        }
+        flush(chunk, chunkRows, results);
+        results.sort(Comparator.comparingInt(BulkCardResultDTO::getRow));
+        return results;
+    }
+
+    private void flush(List<CardCreateDTO> chunk, List<Integer> chunkRows, List<BulkCardResultDTO> results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<BulkCardResultDTO> chunkResults = cardService.createCards(List.copyOf(chunk));
+        for (int i = 0; i < chunkResults.size(); i++) {
+            chunkResults.get(i).setRow(chunkRows.get(i));
+        }
+        results.addAll(chunkResults);
+        chunk.clear();
+        chunkRows.clear();
+    }
+
+    private CardCreateDTO parseLine(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 3) {
+            throw new IllegalArgumentException("expected 3 columns, got " + fields.length);
+        }
+        CardCreateDTO createDTO = new CardCreateDTO();
+        createDTO.setOwnerUsername(fields[0].trim());
+        createDTO.setExpiryDate(LocalDate.parse(fields[1].trim()));
+        createDTO.setInitialBalance(Double.valueOf(fields[2].trim()));
+        return createDTO;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.bankcards.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+// Выдача номеров карт: BIN (6 цифр) + номер счёта (9 цифр) + контрольная цифра Луна.
+// Номера счетов резервируются блоками из последовательности card_account_seq (INCREMENT BY BLOCK_SIZE),
+// поэтому уникальность гарантируется структурно — и между узлами приложения, — а выпуск карты
+// обращается к БД только один раз на BLOCK_SIZE номеров.
+@Component
+public class CardNumberAllocator {
+
+    // Должен совпадать с incrementBy в 06-create-card-account-sequence.yml
+    static final int BLOCK_SIZE = 100;
+    private static final long MAX_ACCOUNT = 999_999_999L;
+    private static final long ACCOUNT_RANGE = 1_000_000_000L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long binPrefix;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long next;
+    private long limit;
+
+    public CardNumberAllocator(JdbcTemplate jdbcTemplate, @Value("${card.pan.bin:400000}") int bin) {
+        if (bin < 100_000 || bin > 999_999) {
+            throw new IllegalArgumentException("BIN must be 6 digits");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.binPrefix = bin * ACCOUNT_RANGE;
+    }
+
+    public String nextCardNumber() {
+        long account;
+        lock.lock();
+        try {
+            if (next >= limit) {
+                Long blockStart = jdbcTemplate.queryForObject("SELECT nextval('card_account_seq')", Long.class);
+                next = blockStart;
+                limit = blockStart + BLOCK_SIZE;
+            }
+            account = next++;
+        } finally {
+            lock.unlock();
+        }
+        if (account > MAX_ACCOUNT) {
+            throw new IllegalStateException("Card account numbers exhausted for BIN " + binPrefix / ACCOUNT_RANGE);
+        }
+        return format(binPrefix + account);
+    }
+
+    // 15-значный номер без контрольной цифры -> 16 символов с контрольной цифрой
+    static String format(long payload) {
+        char[] digits = new char[16];
+        digits[15] = (char) ('0' + luhnCheckDigit(payload));
+        long rest = payload;
+        for (int i = 14; i >= 0; i--) {
+            digits[i] = (char) ('0' + (int) (rest % 10));
+            rest /= 10;
+        }
+        return new String(digits);
+    }
+
+    // Контрольная цифра добавляется справа, поэтому удваивается крайняя правая цифра payload
+    static int luhnCheckDigit(long payload) {
+        int sum = 0;
+        boolean doubled = true;
+        for (long rest = payload; rest > 0; rest /= 10) {
+            int digit = (int) (rest % 10);
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
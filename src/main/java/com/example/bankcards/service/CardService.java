@@ -1,7 +1,9 @@
 
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.BulkCardResultDTO;
 import com.example.bankcards.dto.CardCreateDTO;
+import com.example.bankcards.dto.CursorPageDTO;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.dto.CardDTO;
 import com.example.bankcards.entity.CardStatus;
@@ -9,256 +11,401 @@ import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.AccessDeniedException;
 import com.example.bankcards.exception.ResourceNotFoundException;
 import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.CardSummary;
+import com.example.bankcards.repository.CardWithOwner;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserPrincipal;
+import com.example.bankcards.util.CardCipher;
+import com.example.bankcards.util.CardNumberHasher;
+import com.example.bankcards.util.KeysetCursor;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
-import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.SecureRandom;
-import java.util.Arrays;
-import java.util.Base64;
-import java.util.Random;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
 
 @Service
 public class CardService {
 
+    static final int MAX_TRANSFER_ATTEMPTS = 3;
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    public static final int MAX_SCROLL_SIZE = 100;
+
     private final CardRepository cardRepository;
     private final UserRepository userRepository;
-    @Value("${encryption.key}")
-    private String encryptionKey;
+    private final CardNumberHasher cardNumberHasher;
+    private final CardCipher cardCipher;
+    private final CardNumberAllocator cardNumberAllocator;
+    private final TransferEngine transferEngine;
+    private final TransferLedger transferLedger;
+    private final TransferBatcher transferBatcher;
+    private final IdempotencyService idempotencyService;
+    private final CardCountRegistry cardCountRegistry;
 
-    public CardService(CardRepository cardRepository, UserRepository userRepository) {
+    public CardService(CardRepository cardRepository, UserRepository userRepository,
+                       CardNumberHasher cardNumberHasher, CardCipher cardCipher,
+                       CardNumberAllocator cardNumberAllocator, TransferEngine transferEngine,
+                       TransferLedger transferLedger, TransferBatcher transferBatcher,
+                       IdempotencyService idempotencyService, CardCountRegistry cardCountRegistry) {
         this.cardRepository = cardRepository;
         this.userRepository = userRepository;
+        this.cardNumberHasher = cardNumberHasher;
+        this.cardCipher = cardCipher;
+        this.cardNumberAllocator = cardNumberAllocator;
+        this.transferEngine = transferEngine;
+        this.transferLedger = transferLedger;
+        this.transferBatcher = transferBatcher;
+        this.idempotencyService = idempotencyService;
+        this.cardCountRegistry = cardCountRegistry;
     }
 
     public CardDTO createCard(CardCreateDTO createDTO) {
         User owner = userRepository.findByUsername(createDTO.getOwnerUsername())
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        Card card = cardRepository.save(newCard(owner, createDTO));
+        cardCountRegistry.cardCreated(owner.getId(), card.getStatus());
+        return mapToDTO(card);
+    }
+
+    // Пакетный выпуск: владельцы загружаются одним запросом, карты пишутся JDBC-батчами (pooled card_id_seq).
+    // Результат соответствует входному списку по индексу; номер строки проставляет вызывающая сторона.
+    @Transactional
+    public List<BulkCardResultDTO> createCards(List<CardCreateDTO> createDTOs) {
+        Set<String> usernames = createDTOs.stream()
+                .map(CardCreateDTO::getOwnerUsername)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, User> owners = userRepository.findByUsernameIn(usernames).stream()
+                .collect(Collectors.toMap(User::getUsername, Function.identity()));
+
+        List<BulkCardResultDTO> results = new ArrayList<>(createDTOs.size());
+        List<Card> cards = new ArrayList<>(createDTOs.size());
+        List<BulkCardResultDTO> issued = new ArrayList<>(createDTOs.size());
+        for (CardCreateDTO createDTO : createDTOs) {
+            BulkCardResultDTO result = new BulkCardResultDTO();
+            results.add(result);
+            User owner = owners.get(createDTO.getOwnerUsername());
+            if (owner == null) {
+                result.setError("User not found");
+            } else if (createDTO.getExpiryDate() == null) {
+                result.setError("Expiry date is required");
+            } else if (createDTO.getInitialBalance() == null || createDTO.getInitialBalance() < 0) {
+                result.setError("Initial balance must be non-negative");
+            } else {
+                cards.add(newCard(owner, createDTO));
+                issued.add(result);
+            }
+        }
+        cardRepository.saveAll(cards);
+        for (int i = 0; i < cards.size(); i++) {
+            Card card = cards.get(i);
+            issued.get(i).setCard(mapToDTO(card));
+            cardCountRegistry.cardCreated(card.getOwner().getId(), card.getStatus());
+        }
+        return results;
+    }
+
+    private Card newCard(User owner, CardCreateDTO createDTO) {
+        String cardNumber = cardNumberAllocator.nextCardNumber();
         Card card = new Card();
-        card.setCardNumber(encryptCardNumber(generateCardNumber()));
+        card.setCardNumber(cardCipher.encrypt(cardNumber));
+        card.setPanHmac(cardNumberHasher.hashPan(cardNumber));
+        card.setLast4Hmac(cardNumberHasher.hashLast4(cardNumber.substring(12)));
+        card.setLast4(cardNumber.substring(12));
         card.setOwner(owner);
         card.setExpiryDate(createDTO.getExpiryDate());
         card.setStatus(CardStatus.ACTIVE);
         card.setBalance(createDTO.getInitialBalance());
-        card = cardRepository.save(card);
-        return mapToDTO(card);
+        return card;
     }
 
-    public Page<CardDTO> getUserCards(Pageable pageable) {
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        return cardRepository.findByOwner(user, pageable).map(this::mapToDTO);
+    // Карты текущего пользователя: проекция по owner_id из токена, users не читается.
+    // Владелец у всех строк — сам пользователь, поэтому имя для DTO берётся из principal.
+    // Page-варианты считают точное общее число (COUNT по индексу владельца, и только если оно не ясно из самой страницы);
+    // Slice-варианты — без COUNT, только признак следующей страницы.
+    public Page<CardDTO> getUserCards(UserPrincipal principal, Pageable pageable) {
+        return withTotal(getUserCardsSlice(principal, pageable), pageable,
+                () -> cardRepository.countByOwnerId(principal.getId()));
     }
 
-    public Page<CardDTO> getUserCardsBySearch(String query, Pageable pageable) {
-        String currentUsername = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(currentUsername)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    public Slice<CardDTO> getUserCardsSlice(UserPrincipal principal, Pageable pageable) {
+        return cardRepository.findSummariesByOwnerId(principal.getId(), pageable)
+                .map(card -> mapToDTO(card, principal.getUsername()));
+    }
 
-        Page<Card> cardsPage = cardRepository.findByOwnerAndCardNumberContaining(user, query, pageable);
-        return cardsPage.map(card -> {
-            CardDTO dto = new CardDTO();
-            dto.setId(card.getId());
-            String decryptedNumber = decryptCardNumber(card.getCardNumber());
-            dto.setMaskedCardNumber(decryptedNumber); // Или маскированный номер
-            dto.setOwnerUsername(card.getOwner().getUsername());
-            dto.setExpiryDate(card.getExpiryDate());
-            dto.setStatus(card.getStatus().name());
-            dto.setBalance(card.getBalance());
-            return dto;
-        });
-    }
-
-    public Page<CardDTO> getUserCardsBySearch(Pageable pageable) {
-        String currentUsername = SecurityContextHolder.getContext().getAuthentication().getName();
-        User user = userRepository.findByUsername(currentUsername)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    public Page<CardDTO> getUserCardsBySearch(UserPrincipal principal, String query, Pageable pageable) {
+        String digits = searchDigits(query);
+        if (digits == null) {
+            return Page.empty(pageable);
+        }
+        return withTotal(getUserCardsBySearchSlice(principal, query, pageable), pageable, () -> digits.length() == 16
+                ? cardRepository.countByOwnerIdAndPanHmac(principal.getId(), cardNumberHasher.hashPan(digits))
+                : cardRepository.countByOwnerIdAndLast4Hmac(principal.getId(), cardNumberHasher.hashLast4(digits)));
+    }
 
-        Page<Card> cardsPage = cardRepository.findByOwnerAndStatus(user, CardStatus.ACTIVE, pageable);
-        return cardsPage.map(card -> {
-            CardDTO dto = new CardDTO();
-            dto.setId(card.getId());
-            String decryptedNumber = decryptCardNumber(card.getCardNumber());
-            dto.setMaskedCardNumber(decryptedNumber);
-            dto.setOwnerUsername(card.getOwner().getUsername());
-            dto.setExpiryDate(card.getExpiryDate());
-            dto.setStatus(card.getStatus().name());
-            dto.setBalance(card.getBalance());
-            return dto;
-        });
+    public Slice<CardDTO> getUserCardsBySearchSlice(UserPrincipal principal, String query, Pageable pageable) {
+        // Поиск по blind index: полный номер (16 цифр) или последние 4 цифры, без расшифровки строк
+        String digits = searchDigits(query);
+        Slice<CardSummary> cards;
+        if (digits == null) {
+            return new SliceImpl<>(List.of(), pageable, false);
+        } else if (digits.length() == 16) {
+            cards = cardRepository.findSummariesByOwnerIdAndPanHmac(principal.getId(), cardNumberHasher.hashPan(digits), pageable);
+        } else {
+            cards = cardRepository.findSummariesByOwnerIdAndLast4Hmac(principal.getId(), cardNumberHasher.hashLast4(digits), pageable);
+        }
+        return cards.map(card -> mapToDTO(card, principal.getUsername()));
     }
 
+    // null — запрос не похож ни на полный номер, ни на последние 4 цифры
+    private static String searchDigits(String query) {
+        String digits = query.replaceAll("[^0-9]", "");
+        return digits.length() == 16 || digits.length() == 4 ? digits : null;
+    }
 
+    public Page<CardDTO> getUserCardsBySearch(UserPrincipal principal, Pageable pageable) {
+        return withTotal(getUserCardsBySearchSlice(principal, pageable), pageable,
+                () -> cardRepository.countByOwnerIdAndStatus(principal.getId(), CardStatus.ACTIVE));
+    }
 
-    public void blockCard(Long cardId) {
+    public Slice<CardDTO> getUserCardsBySearchSlice(UserPrincipal principal, Pageable pageable) {
+        return cardRepository.findSummariesByOwnerIdAndStatus(principal.getId(), CardStatus.ACTIVE, pageable)
+                .map(card -> mapToDTO(card, principal.getUsername()));
+    }
+
+    // total вызывается, только если общее число нельзя вывести из размера и номера страницы
+    private static <T> Page<T> withTotal(Slice<T> slice, Pageable pageable, LongSupplier total) {
+        return PageableExecutionUtils.getPage(slice.getContent(), pageable, total);
+    }
+
+    // Полный номер карты расшифровывается только по явному запросу владельца
+    public String revealCardNumber(UserPrincipal principal, Long cardId) {
         Card card = cardRepository.findById(cardId)
                 .orElseThrow(() -> new ResourceNotFoundException("Card not found"));
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        if (!card.getOwner().getUsername().equals(username) && !isAdmin()) {
-            throw new RuntimeException("Access denied");
+        if (!isOwner(principal, card)) {
+            throw new AccessDeniedException("Access denied");
         }
-        card.setStatus(CardStatus.BLOCKED);
-        cardRepository.save(card);
+        return cardCipher.decrypt(card.getCardNumber());
     }
 
-    public void activateCard(Long cardId) {
-        Card card = cardRepository.findById(cardId)
-                .orElseThrow(() -> new ResourceNotFoundException("Card not found"));
-        if (!isAdmin()) {
+    // Владелец блокирует свою карту, администратор — любую
+    @Transactional
+    public void blockCard(UserPrincipal principal, Long cardId) {
+        changeStatus(principal, cardId, CardStatus.BLOCKED);
+    }
+
+    @Transactional
+    public void activateCard(UserPrincipal principal, Long cardId) {
+        if (!principal.isAdmin()) {
             throw new RuntimeException("Access denied");
         }
-        card.setStatus(CardStatus.ACTIVE);
-        cardRepository.save(card);
+        changeStatus(principal, cardId, CardStatus.ACTIVE);
     }
 
-    public void deleteCard(Long cardId) {
+    // Смена статуса одним запросом с проверкой владельца в WHERE: карта не загружается.
+    // Чужая и несуществующая карта для пользователя неразличимы (0 строк) — обе дают 404.
+    private void changeStatus(UserPrincipal principal, Long cardId, CardStatus status) {
+        Optional<String> previous = principal.isAdmin()
+                ? cardRepository.updateStatus(cardId, status.name())
+                : cardRepository.updateStatusForOwner(cardId, principal.getId(), status.name());
+        if (previous.isEmpty()) {
+            throw new ResourceNotFoundException(principal.isAdmin() ? "Card not found" : "Card not found or not owned");
+        }
+        cardCountRegistry.statusChanged(CardStatus.valueOf(previous.get()), status);
+    }
+
+    // Удаление пользователя вместе с картами: карты удаляются явно, до каскада JPA, чтобы счётчики
+    // CardCountRegistry уменьшились по статусу каждой удалённой карты
+    @Transactional
+    public void deleteUserWithCards(Long userId) {
+        List<String> statuses = cardRepository.deleteByOwnerIdReturningStatus(userId);
+        userRepository.deleteById(userId);
+        for (String status : statuses) {
+            cardCountRegistry.cardDeleted(userId, CardStatus.valueOf(status));
+        }
+    }
+
+    public void deleteCard(UserPrincipal principal, Long cardId) {
         Card card = cardRepository.findById(cardId)
                 .orElseThrow(() -> new ResourceNotFoundException("Card not found"));
-        if (!isAdmin()) {
+        if (!principal.isAdmin()) {
             throw new RuntimeException("Access denied");
         }
         cardRepository.delete(card);
+        cardCountRegistry.cardDeleted(card.getOwner().getId(), card.getStatus());
     }
 
-    public void transfer(Long fromCardId, Long toCardId, Double amount) {
-        Card fromCard = cardRepository.findById(fromCardId)
-                .orElseThrow(() -> new RuntimeException("Source card not found"));
-        Card toCard = cardRepository.findById(toCardId)
-                .orElseThrow(() -> new RuntimeException("Destination card not found"));
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        if (!fromCard.getOwner().getUsername().equals(username) || !toCard.getOwner().getUsername().equals(username)) {
-            throw new RuntimeException("Access denied");
+    public void transfer(UserPrincipal principal, Long fromCardId, Long toCardId, Double amount) {
+        transfer(principal, fromCardId, toCardId, amount, null);
+    }
+
+    public void transfer(UserPrincipal principal, Long fromCardId, Long toCardId, Double amount, String idempotencyKey) {
+        if (amount == null || amount <= 0) {
+            throw new RuntimeException("Transfer amount must be positive");
+        }
+        if (fromCardId.equals(toCardId)) {
+            throw new RuntimeException("Cannot transfer to the same card");
         }
-        if (fromCard.getBalance() < amount) {
-            throw new RuntimeException("Insufficient balance");
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            throw new RuntimeException("Invalid Idempotency-Key");
+        }
+        Long ownerId = principal.getId();
+        // Повтор только при конфликте блокировок/сериализации; бизнес-ошибки пробрасываются сразу
+        for (int attempt = 1; ; attempt++) {
+            try {
+                boolean executed = true;
+                if (idempotencyKey != null) {
+                    // Ключ сохраняется в транзакции перевода, поэтому такие переводы идут мимо группового коммита
+                    String fingerprint = fromCardId + ":" + toCardId + ":" + amount;
+                    executed = idempotencyService.execute(ownerId, idempotencyKey, fingerprint,
+                            () -> transferEngine.transfer(ownerId, fromCardId, toCardId, amount));
+                } else if (transferBatcher.isEnabled()) {
+                    transferBatcher.transfer(ownerId, fromCardId, toCardId, amount);
+                } else {
+                    transferEngine.transfer(ownerId, fromCardId, toCardId, amount);
+                }
+                // Транзакция перевода уже закоммичена; запись в журнал — асинхронно
+                if (executed) {
+                    transferLedger.record(ownerId, fromCardId, toCardId, amount);
+                }
+                return;
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= MAX_TRANSFER_ATTEMPTS) {
+                    throw e;
+                }
+            }
         }
-        fromCard.setBalance(fromCard.getBalance() - amount);
-        toCard.setBalance(toCard.getBalance() + amount);
-        cardRepository.save(fromCard);
-        cardRepository.save(toCard);
     }
 
-    public Page<CardDTO> getAllCards(Pageable pageable) {
-        if (!isAdmin()) {
+    // Общее число для админки — приблизительное, из CardCountRegistry, без COUNT(*) по всей таблице
+    public Page<CardDTO> getAllCards(UserPrincipal principal, Pageable pageable) {
+        return withTotal(getAllCardsSlice(principal, pageable), pageable, cardCountRegistry::total);
+    }
+
+    public Slice<CardDTO> getAllCardsSlice(UserPrincipal principal, Pageable pageable) {
+        if (!principal.isAdmin()) {
             throw new RuntimeException("Access denied");
         }
-        return cardRepository.findAll(pageable).map(this::mapToDTO);
+        return cardRepository.findAllWithOwner(pageable)
+                .map(card -> mapToDTO(card, card.getOwnerUsername()));
     }
 
-    public Double getCardBalance(Long cardId) {
-        Card card = cardRepository.findById(cardId)
-                .orElseThrow(() -> new ResourceNotFoundException("Card not found"));
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        if (!card.getOwner().getUsername().equals(username)) {
-            throw new AccessDeniedException("Access denied");
+    // Приблизительное число карт по статусам для админки
+    public Map<CardStatus, Long> getCardCounts(UserPrincipal principal) {
+        if (!principal.isAdmin()) {
+            throw new RuntimeException("Access denied");
         }
-        return card.getBalance();
+        Map<CardStatus, Long> counts = new EnumMap<>(CardStatus.class);
+        for (CardStatus status : CardStatus.values()) {
+            counts.put(status, cardCountRegistry.countByStatus(status));
+        }
+        return counts;
     }
 
-    private String generateCardNumber() {
-        Random random = new Random();
-        String cardNumber;
-        boolean isUnique;
-
-        do {
-            StringBuilder tempNumber = new StringBuilder("4");
-            for (int i = 0; i < 14; i++) {
-                tempNumber.append(random.nextInt(10));
+    // Админский список карт с keyset-пагинацией: стоимость страницы не зависит от её номера.
+    // sort — id или expiryDate; cursor — next предыдущей страницы (null — первая); total — только по запросу.
+    public CursorPageDTO<CardDTO> scrollAllCards(UserPrincipal principal, String sort, String cursor, int size,
+                                                 boolean withTotal) {
+        if (!principal.isAdmin()) {
+            throw new RuntimeException("Access denied");
+        }
+        int limit = Math.max(1, Math.min(size, MAX_SCROLL_SIZE));
+        // Лишняя строка показывает, есть ли следующая страница
+        Pageable fetch = PageRequest.of(0, limit + 1);
+        KeysetCursor after = cursor != null ? KeysetCursor.decode(cursor, sort) : null;
+        List<CardWithOwner> rows;
+        Function<CardWithOwner, String> key;
+        switch (sort) {
+            case "id" -> {
+                rows = cardRepository.findWithOwnerAfterId(after != null ? after.getId() : 0L, fetch);
+                key = card -> "";
             }
-            int checkDigit = calculateLuhnCheckDigit(tempNumber.toString());
-            cardNumber = tempNumber.append(checkDigit).toString();
-            isUnique = !cardRepository.existsByCardNumber(cardNumber);
-        } while (!isUnique);
-
-        return cardNumber;
-    }
-
-    private int calculateLuhnCheckDigit(String number) {
-        int sum = 0;
-        boolean isEven = false;
-        for (int i = number.length() - 1; i >= 0; i--) {
-            int digit = Character.getNumericValue(number.charAt(i));
-            if (isEven) {
-                digit *= 2;
-                if (digit > 9) {
-                    digit -= 9;
-                }
+            case "expiryDate" -> {
+                // Первая страница — курсор меньше любой строки (expiry_date NOT NULL)
+                rows = after != null
+                        ? cardRepository.findWithOwnerAfterExpiryDate(parseDate(after.getKey()), after.getId(), fetch)
+                        : cardRepository.findWithOwnerAfterExpiryDate(LocalDate.of(1, 1, 1), 0L, fetch);
+                key = card -> card.getExpiryDate().toString();
             }
-            sum += digit;
-            isEven = !isEven;
+            default -> throw new RuntimeException("Unsupported sort: " + sort);
+        }
+        CursorPageDTO<CardDTO> result = new CursorPageDTO<>();
+        if (rows.size() > limit) {
+            rows = rows.subList(0, limit);
+            CardWithOwner last = rows.get(limit - 1);
+            result.setNext(KeysetCursor.encode(sort, key.apply(last), last.getId()));
+        }
+        result.setContent(rows.stream().map(card -> mapToDTO(card, card.getOwnerUsername())).toList());
+        if (withTotal) {
+            result.setTotal(cardCountRegistry.total());
         }
-        return (10 - (sum % 10)) % 10;
+        return result;
     }
 
-    String encryptCardNumber(String cardNumber) {
+    private static LocalDate parseDate(String value) {
         try {
-            if (cardNumber.length() != 16) {
-                throw new IllegalArgumentException("Card number must be 16 digits");
-            }
-            SecretKeySpec key = new SecretKeySpec(encryptionKey.getBytes(StandardCharsets.UTF_8), "AES");
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            byte[] iv = new byte[16];
-            new SecureRandom().nextBytes(iv);
-            IvParameterSpec ivSpec = new IvParameterSpec(iv);
-            cipher.init(Cipher.ENCRYPT_MODE, key, ivSpec);
-            byte[] encrypted = cipher.doFinal(cardNumber.getBytes(StandardCharsets.UTF_8));
-            byte[] result = new byte[iv.length + encrypted.length];
-            System.arraycopy(iv, 0, result, 0, iv.length);
-            System.arraycopy(encrypted, 0, result, iv.length, encrypted.length);
-            return Base64.getEncoder().encodeToString(result);
-        } catch (Exception e) {
-            System.err.println("Encryption error: " + e.getMessage());
-            throw new RuntimeException("Encryption error", e);
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new RuntimeException("Invalid cursor");
         }
     }
 
-    public String decryptCardNumber(String encryptedCardNumber) {
-        try {
+    public Double getCardBalance(UserPrincipal principal, Long cardId) {
+        Card card = cardRepository.findById(cardId)
+                .orElseThrow(() -> new ResourceNotFoundException("Card not found"));
+        if (!isOwner(principal, card)) {
+            throw new AccessDeniedException("Access denied");
+        }
+        return card.getBalance();
+    }
+
+    // Карты владельцев одной страницы пользователей: один запрос owner_id IN (...) с проекцией,
+    // без загрузки сущностей Card/User. ownerNames — id -> username уже загруженных пользователей.
+    public Map<Long, List<CardDTO>> getCardsByOwners(Map<Long, String> ownerNames) {
+        Map<Long, List<CardDTO>> cardsByOwner = new HashMap<>();
+        if (ownerNames.isEmpty()) {
+            return cardsByOwner;
+        }
+        for (CardSummary card : cardRepository.findSummariesByOwnerIdIn(ownerNames.keySet())) {
+            cardsByOwner.computeIfAbsent(card.getOwnerId(), id -> new ArrayList<>())
+                    .add(mapToDTO(card, ownerNames.get(card.getOwnerId())));
+        }
+        return cardsByOwner;
+    }
 
-            byte[] combined = Base64.getDecoder().decode(encryptedCardNumber);
-
-            byte[] iv = Arrays.copyOfRange(combined, 0, 16);
-            byte[] encrypted = Arrays.copyOfRange(combined, 16, combined.length);
-            SecretKeySpec key = new SecretKeySpec(encryptionKey.getBytes(StandardCharsets.UTF_8), "AES");
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            IvParameterSpec ivSpec = new IvParameterSpec(iv);
-            cipher.init(Cipher.DECRYPT_MODE, key, ivSpec);
-            byte[] decrypted = cipher.doFinal(encrypted);
-            return new String(decrypted, StandardCharsets.UTF_8);
-        } catch (IllegalArgumentException e) {
-            System.err.println("Base64 decode error: " + e.getMessage());
-            throw new RuntimeException("Decryption error: Invalid Base64", e);
-        } catch (BadPaddingException e) {
-            System.err.println("Decryption error: Bad padding - " + e.getMessage());
-            throw new RuntimeException("Decryption error: Bad padding", e);
-        } catch (IllegalBlockSizeException e) {
-            System.err.println("Decryption error: Invalid block size - " + e.getMessage());
-            throw new RuntimeException("Decryption error: Invalid block size", e);
-        } catch (InvalidKeyException e) {
-            System.err.println("Decryption error: Invalid key - " + e.getMessage());
-            throw new RuntimeException("Decryption error: Invalid key", e);
-        } catch (Exception e) {
-            System.err.println("General decryption error: " + e.getMessage());
-            throw new RuntimeException("Decryption error", e);
+    // Только количество карт по владельцам (приблизительное, из CardCountRegistry);
+    // промахи дочитываются одним запросом по owner_id IN (...)
+    public Map<Long, Long> countCardsByOwners(Collection<Long> ownerIds) {
+        if (ownerIds.isEmpty()) {
+            return Map.of();
         }
+        return cardCountRegistry.countByOwners(ownerIds);
     }
 
-    private CardDTO mapToDTO(Card card) {
+    // Только для только что выпущенных карт: владелец уже загружен в той же операции
+    public CardDTO mapToDTO(Card card) {
         CardDTO dto = new CardDTO();
         dto.setId(card.getId());
-        String decrypted = decryptCardNumber(card.getCardNumber());
-        dto.setMaskedCardNumber(String.format("**** **** **** %s", decrypted.substring(12))); // Последние 4 цифры
+        dto.setMaskedCardNumber(maskedNumber(card.getLast4(), card.getCardNumber()));
         dto.setOwnerUsername(card.getOwner().getUsername());
         dto.setExpiryDate(card.getExpiryDate());
         dto.setStatus(card.getStatus().name());
@@ -266,8 +413,25 @@ public class CardService {
         return dto;
     }
 
-    private boolean isAdmin() {
-        return SecurityContextHolder.getContext().getAuthentication().getAuthorities().stream()
-                .anyMatch(auth -> auth.getAuthority().equals("ROLE_ADMIN"));
+    private CardDTO mapToDTO(CardSummary card, String ownerUsername) {
+        CardDTO dto = new CardDTO();
+        dto.setId(card.getId());
+        dto.setMaskedCardNumber(maskedNumber(card.getLast4(), card.getCardNumber()));
+        dto.setOwnerUsername(ownerUsername);
+        dto.setExpiryDate(card.getExpiryDate());
+        dto.setStatus(card.getStatus().name());
+        dto.setBalance(card.getBalance());
+        return dto;
+    }
+
+    // last4 хранится с момента выпуска; расшифровка нужна только для строк, ещё не обработанных CardBackfillService
+    private String maskedNumber(String last4, String encryptedNumber) {
+        String digits = last4 != null ? last4 : cardCipher.decrypt(encryptedNumber).substring(12);
+        return "**** **** **** " + digits;
+    }
+
+    // owner — lazy-прокси: его id известен без загрузки пользователя
+    private static boolean isOwner(UserPrincipal principal, Card card) {
+        return card.getOwner().getId().equals(principal.getId());
     }
 }
\ No newline at end of file
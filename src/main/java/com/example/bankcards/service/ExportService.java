@@ -0,0 +1,275 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.util.CardCipher;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Полная выгрузка карт и пользователей для сверки. Строки читаются курсором PostgreSQL (fetchSize в транзакции)
+// и сразу пишутся в ответ, поэтому память не зависит от размера таблицы: в куче — одна порция строк и буфер вывода.
+// Сущности и DTO не создаются; номер карты маскируется при записи, как в CardService.
+// Статус 200 уходит до первой строки, поэтому ошибка посреди выгрузки обрывает файл: строки с нерасшифровываемым
+// номером пропускаются с записью в лог, как в CardBackfillService.
+@Service
+public class ExportService {
+    private static final Logger logger = LoggerFactory.getLogger(ExportService.class);
+
+    private static final String CARDS_SQL = "SELECT c.id, c.last4, CASE WHEN c.last4 IS NULL THEN c.card_number END, "
+            + "u.username, c.expiry_date, c.status, c.balance FROM cards c JOIN users u ON u.id = c.owner_id ORDER BY c.id";
+    private static final String[] CARD_COLUMNS = {"id", "maskedCardNumber", "ownerUsername", "expiryDate", "status", "balance"};
+    private static final String USERS_SQL = "SELECT id, username, role FROM users ORDER BY id";
+    private static final String[] USER_COLUMNS = {"id", "username", "role"};
+
+    private final JdbcTemplate streaming;
+    private final PlatformTransactionManager transactionManager;
+    private final CardCipher cardCipher;
+    private final ObjectMapper objectMapper;
+
+    public ExportService(DataSource dataSource, PlatformTransactionManager transactionManager, CardCipher cardCipher,
+                         ObjectMapper objectMapper, @Value("${export.fetch-size:5000}") int fetchSize) {
+        // Драйвер PostgreSQL отдаёт строки порциями только с fetchSize и вне autocommit
+        this.streaming = new JdbcTemplate(dataSource);
+        this.streaming.setFetchSize(fetchSize);
+        this.transactionManager = transactionManager;
+        this.cardCipher = cardCipher;
+        this.objectMapper = objectMapper;
+    }
+
+    public enum Format {
+        NDJSON("ndjson", MediaType.parseMediaType("application/x-ndjson")),
+        CSV("csv", MediaType.parseMediaType("text/csv;charset=UTF-8"));
+
+        private final String extension;
+        private final MediaType mediaType;
+
+        Format(String extension, MediaType mediaType) {
+            this.extension = extension;
+            this.mediaType = mediaType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+
+        public static Format parse(String format) {
+            for (Format value : values()) {
+                if (value.extension.equalsIgnoreCase(format)) {
+                    return value;
+                }
+            }
+            throw new RuntimeException("Unsupported export format: " + format);
+        }
+    }
+
+    public void exportCards(Format format, OutputStream out) throws IOException {
+        export(format, out, CARDS_SQL, CARD_COLUMNS, (rs, row) -> {
+            long id = rs.getLong(1);
+            String last4 = rs.getString(2);
+            if (last4 == null) {
+                // Карты до заполнения last4 (CardBackfillService) — расшифровка, как в CardService
+                try {
+                    last4 = cardCipher.decrypt(rs.getString(3)).substring(12);
+                } catch (RuntimeException e) {
+                    // Ни одного значения ещё не записано — строка пропускается целиком
+                    logger.warn("Card {} skipped by export: {}", id, e.getMessage());
+                    return;
+                }
+            }
+            row.value(id);
+            row.value("**** **** **** " + last4);
+            row.value(rs.getString(4));
+            // date в текстовом виде PostgreSQL — уже yyyy-MM-dd, как expiryDate в CardDTO
+            row.value(rs.getString(5));
+            row.value(rs.getString(6));
+            row.value(rs.getDouble(7));
+        });
+    }
+
+    public void exportUsers(Format format, OutputStream out) throws IOException {
+        export(format, out, USERS_SQL, USER_COLUMNS, (rs, row) -> {
+            row.value(rs.getLong(1));
+            row.value(rs.getString(2));
+            row.value(rs.getString(3));
+        });
+    }
+
+    private void export(Format format, OutputStream out, String sql, String[] columns, RowReader reader) throws IOException {
+        RowWriter writer = format == Format.CSV
+                ? new CsvWriter(out, columns)
+                : new NdjsonWriter(objectMapper.getFactory().createGenerator(out), columns);
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        try {
+            readOnly.executeWithoutResult(status -> streaming.query(sql, (RowCallbackHandler) rs -> {
+                try {
+                    writer.startRow();
+                    reader.read(rs, writer);
+                    writer.endRow();
+                } catch (IOException e) {
+                    // Клиент оборвал загрузку: запрос прерывается, курсор закрывается вместе с транзакцией
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.finish();
+    }
+
+    @FunctionalInterface
+    private interface RowReader {
+        void read(ResultSet rs, RowWriter row) throws SQLException, IOException;
+    }
+
+    // Значения строки передаются по порядку столбцов; строка без значений не пишется
+    private abstract static class RowWriter {
+        final String[] columns;
+        int column;
+
+        RowWriter(String[] columns) {
+            this.columns = columns;
+        }
+
+        void startRow() throws IOException {
+            column = 0;
+        }
+
+        abstract void value(String value) throws IOException;
+
+        abstract void value(long value) throws IOException;
+
+        abstract void value(double value) throws IOException;
+
+        abstract void endRow() throws IOException;
+
+        abstract void finish() throws IOException;
+    }
+
+    // Объект на строку, поля — как в CardDTO/UserDTO
+    private static final class NdjsonWriter extends RowWriter {
+        private final JsonGenerator json;
+
+        NdjsonWriter(JsonGenerator json, String[] columns) {
+            super(columns);
+            this.json = json;
+            // Объекты разделяются только переводом строки (по умолчанию Jackson ставит пробел между корневыми значениями)
+            json.setRootValueSeparator(null);
+        }
+
+        @Override
+        void value(String value) throws IOException {
+            json.writeStringField(field(), value);
+        }
+
+        @Override
+        void value(long value) throws IOException {
+            json.writeNumberField(field(), value);
+        }
+
+        @Override
+        void value(double value) throws IOException {
+            json.writeNumberField(field(), value);
+        }
+
+        @Override
+        void endRow() throws IOException {
+            if (column > 0) {
+                json.writeEndObject();
+                json.writeRaw('\n');
+            }
+        }
+
+        // Объект открывается первым значением строки
+        private String field() throws IOException {
+            if (column == 0) {
+                json.writeStartObject();
+            }
+            return columns[column++];
+        }
+
+        @Override
+        void finish() throws IOException {
+            json.flush();
+        }
+    }
+
+    // Строка заголовка, затем значения через запятую; значения с запятой, кавычкой или переводом строки — в кавычках
+    private static final class CsvWriter extends RowWriter {
+        private final Writer csv;
+
+        CsvWriter(OutputStream out, String[] columns) throws IOException {
+            super(columns);
+            this.csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            csv.write(String.join(",", columns));
+            csv.write('\n');
+        }
+
+        @Override
+        void value(String value) throws IOException {
+            separator();
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                csv.write(value);
+                return;
+            }
+            csv.write('"');
+            csv.write(value.replace("\"", "\"\""));
+            csv.write('"');
+        }
+
+        @Override
+        void value(long value) throws IOException {
+            separator();
+            csv.write(Long.toString(value));
+        }
+
+        @Override
+        void value(double value) throws IOException {
+            separator();
+            csv.write(Double.toString(value));
+        }
+
+        @Override
+        void endRow() throws IOException {
+            if (column > 0) {
+                csv.write('\n');
+            }
+        }
+
+        @Override
+        void finish() throws IOException {
+            csv.flush();
+        }
+
+        private void separator() throws IOException {
+            if (column++ > 0) {
+                csv.write(',');
+            }
+        }
+    }
+}
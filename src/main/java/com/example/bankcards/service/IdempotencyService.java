@@ -0,0 +1,136 @@
+package com.example.bankcards.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Идемпотентность по заголовку Idempotency-Key.
+// Источник истины — таблица idempotency_keys: ключ вставляется в той же транзакции, что и само действие,
+// поэтому при откате действия ключ тоже не сохраняется, а повтор с другого узла ждёт коммита и видит строку.
+// Перед таблицей — ограниченный Caffeine-кэш с TTL для быстрых повторов и карта выполняющихся запросов:
+// одновременные дубликаты на этом узле ждут результат первого, а не выполняют действие ещё раз.
+@Service
+public class IdempotencyService {
+
+    private static final String INSERT_SQL = "INSERT INTO idempotency_keys (owner_id, idem_key, request_fingerprint, created_at) "
+            + "VALUES (?, ?, ?, ?) ON CONFLICT DO NOTHING";
+    private static final String SELECT_SQL =
+            "SELECT request_fingerprint FROM idempotency_keys WHERE owner_id = ? AND idem_key = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    // ownerId:key -> отпечаток запроса, выполненного с этим ключом
+    private final Cache<String, String> completed;
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter cacheHits;
+    private final Counter storeHits;
+    private final Counter coalesced;
+    private final Counter executed;
+    private final Counter collisions;
+
+    public IdempotencyService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${transfer.idempotency.ttl-hours:24}") long ttlHours,
+                              @Value("${transfer.idempotency.cache-size:100000}") long cacheSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttl = Duration.ofHours(ttlHours);
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, completed, "idempotency");
+        this.cacheHits = outcome(meterRegistry, "cache_hit");
+        this.storeHits = outcome(meterRegistry, "store_hit");
+        this.coalesced = outcome(meterRegistry, "coalesced");
+        this.executed = outcome(meterRegistry, "executed");
+        this.collisions = Counter.builder("idempotency.collisions")
+                .description("Idempotency keys reused with a different request")
+                .register(meterRegistry);
+    }
+
+    // true — действие выполнено этим вызовом; false — это повтор уже выполненного запроса
+    public boolean execute(Long ownerId, String key, String fingerprint, Runnable action) {
+        String cacheKey = ownerId + ":" + key;
+        String known = completed.getIfPresent(cacheKey);
+        if (known != null) {
+            cacheHits.increment();
+            return replay(known, fingerprint);
+        }
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(cacheKey, mine);
+        if (running != null) {
+            coalesced.increment();
+            try {
+                return replay(running.join(), fingerprint);
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        try {
+            String stored = transactionTemplate.execute(status -> {
+                if (jdbcTemplate.update(INSERT_SQL, ownerId, key, fingerprint, Timestamp.from(Instant.now())) == 0) {
+                    return jdbcTemplate.queryForObject(SELECT_SQL, String.class, ownerId, key);
+                }
+                action.run();
+                return null;
+            });
+            String result = stored != null ? stored : fingerprint;
+            // Сначала кэш, потом снятие из inFlight: новый дубликат увидит хотя бы одно из двух
+            completed.put(cacheKey, result);
+            mine.complete(result);
+            if (stored == null) {
+                executed.increment();
+                return true;
+            }
+            storeHits.increment();
+            return replay(stored, fingerprint);
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, mine);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${transfer.idempotency.cleanup-interval-ms:3600000}")
+    public void purgeExpired() {
+        jdbcTemplate.update("DELETE FROM idempotency_keys WHERE created_at < ?", Timestamp.from(Instant.now().minus(ttl)));
+    }
+
+    private boolean replay(String storedFingerprint, String fingerprint) {
+        if (!storedFingerprint.equals(fingerprint)) {
+            collisions.increment();
+            throw new RuntimeException("Idempotency key was already used for a different request");
+        }
+        return false;
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("idempotency.requests")
+                .description("Requests carrying an Idempotency-Key, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.bankcards.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+// Групповой коммит переводов: запросы, пришедшие в пределах window-ms (но не больше max-batch),
+// выполняются одним потоком в одной транзакции — один fsync на всю группу.
+// Карты группы блокируются сразу, в порядке id, и каждый перевод принимается или отклоняется по заблокированным
+// балансам (TransferEngine.applyGroup): отклонённый перевод ничего не пишет, точки сохранения не нужны.
+// Ошибка БД прерывает транзакцию PostgreSQL целиком, поэтому откатывает всю группу.
+// Вызывающий поток ждёт коммита всей группы; при ошибке коммита все переводы группы получают исключение.
+@Component
+public class TransferBatcher {
+
+    private static final long STOP_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+
+    private final TransferEngine transferEngine;
+    private final TransactionTemplate batchTransaction;
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final BlockingQueue<PendingTransfer> queue;
+
+    private final DistributionSummary batchSize;
+    private final Timer batchCommit;
+    private final Timer transferLatency;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public TransferBatcher(TransferEngine transferEngine, PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${transfer.group-commit.enabled:false}") boolean enabled,
+                           @Value("${transfer.group-commit.window-ms:2}") long windowMs,
+                           @Value("${transfer.group-commit.max-batch:256}") int maxBatch,
+                           @Value("${transfer.group-commit.queue-capacity:10000}") int queueCapacity) {
+        this.transferEngine = transferEngine;
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxBatch = maxBatch;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = DistributionSummary.builder("transfer.group_commit.batch.size")
+                .description("Transfers committed per transaction")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchCommit = Timer.builder("transfer.group_commit.batch.duration")
+                .description("Time to apply and commit one group")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.transferLatency = Timer.builder("transfer.group_commit.latency")
+                .description("Time from submit to group commit, as seen by the request")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::run, "transfer-group-commit");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            try {
+                worker.join(SHUTDOWN_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Переводы, поставленные во время остановки, всё равно выполняются
+        List<PendingTransfer> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (int from = 0; from < rest.size(); from += maxBatch) {
+            commit(rest.subList(from, Math.min(from + maxBatch, rest.size())));
+        }
+    }
+
+    // Блокирует до коммита группы; бросает то же исключение, что и TransferEngine.transfer
+    public void transfer(Long ownerId, Long fromCardId, Long toCardId, Double amount) {
+        PendingTransfer pending = new PendingTransfer(ownerId, fromCardId, toCardId, amount);
+        if (!running || !queue.offer(pending)) {
+            transferEngine.transfer(ownerId, fromCardId, toCardId, amount);
+            return;
+        }
+        try {
+            pending.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void run() {
+        long pollNanos = Math.min(Math.max(windowNanos, 1), STOP_CHECK_NANOS);
+        List<PendingTransfer> batch = new ArrayList<>(maxBatch);
+        try {
+            while (running) {
+                PendingTransfer first = queue.poll(STOP_CHECK_NANOS, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatch) {
+                    queue.drainTo(batch, maxBatch - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatch || remaining <= 0) {
+                        break;
+                    }
+                    PendingTransfer next = queue.poll(Math.min(remaining, pollNanos), TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+                commit(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            commit(batch);
+        }
+    }
+
+    private void commit(List<PendingTransfer> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<TransferEngine.Transfer> transfers = new ArrayList<>(batch.size());
+        for (PendingTransfer p : batch) {
+            transfers.add(p.transfer);
+        }
+        RuntimeException[] errors;
+        long started = System.nanoTime();
+        try {
+            // Отказы переводов (нехватка средств, чужая карта) возвращаются по индексу, исключение — только ошибка БД
+            errors = batchTransaction.execute(status -> transferEngine.applyGroup(transfers));
+        } catch (RuntimeException e) {
+            // Не закоммитилась вся группа — ни один перевод не применён
+            for (PendingTransfer p : batch) {
+                p.result.completeExceptionally(e);
+            }
+            return;
+        } finally {
+            batchCommit.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            batchSize.record(batch.size());
+        }
+        long committed = System.nanoTime();
+        for (int i = 0; i < batch.size(); i++) {
+            PendingTransfer p = batch.get(i);
+            transferLatency.record(committed - p.submittedAt, TimeUnit.NANOSECONDS);
+            if (errors[i] == null) {
+                p.result.complete(null);
+            } else {
+                p.result.completeExceptionally(errors[i]);
+            }
+        }
+    }
+
+    private static final class PendingTransfer {
+        final TransferEngine.Transfer transfer;
+        final long submittedAt = System.nanoTime();
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        PendingTransfer(Long ownerId, Long fromCardId, Long toCardId, Double amount) {
+            this.transfer = new TransferEngine.Transfer(ownerId, fromCardId, toCardId, amount);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.LockedBalance;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// Перевод между картами одного владельца в одной транзакции из двух условных UPDATE.
+// Строки блокируются в порядке возрастания id, поэтому встречные переводы не приводят к deadlock.
+// Причина отказа выясняется дополнительным запросом только на пути ошибки.
+@Component
+public class TransferEngine {
+
+    private final CardRepository cardRepository;
+
+    public TransferEngine(CardRepository cardRepository) {
+        this.cardRepository = cardRepository;
+    }
+
+    @Transactional
+    public void transfer(Long ownerId, Long fromCardId, Long toCardId, Double amount) {
+        apply(ownerId, fromCardId, toCardId, amount);
+    }
+
+    // Без собственной транзакции: для вызова внутри уже открытой
+    public void apply(Long ownerId, Long fromCardId, Long toCardId, Double amount) {
+        if (fromCardId <= toCardId) {
+            debit(ownerId, fromCardId, amount);
+            credit(ownerId, toCardId, amount);
+        } else {
+            credit(ownerId, toCardId, amount);
+            debit(ownerId, fromCardId, amount);
+        }
+    }
+
+    // Группа переводов в уже открытой транзакции (групповой коммит). Все затронутые карты блокируются сразу,
+    // одним SELECT ... FOR UPDATE в порядке id; дальше каждый перевод принимается или отклоняется по заблокированным
+    // балансам в памяти, по порядку группы. В БД пишутся только итоговые балансы изменившихся карт: отклонённый
+    // перевод ничего не меняет, обратных UPDATE нет. Возвращает причину отказа по индексу перевода (null — применён).
+    public RuntimeException[] applyGroup(List<Transfer> transfers) {
+        Set<Long> cardIds = new HashSet<>();
+        for (Transfer t : transfers) {
+            cardIds.add(t.fromCardId());
+            cardIds.add(t.toCardId());
+        }
+        Map<Long, Long> owners = new HashMap<>();
+        Map<Long, Double> locked = new HashMap<>();
+        for (LockedBalance card : cardRepository.lockBalances(cardIds)) {
+            owners.put(card.getId(), card.getOwnerId());
+            locked.put(card.getId(), card.getBalance());
+        }
+        Map<Long, Double> balances = new HashMap<>(locked);
+        RuntimeException[] errors = new RuntimeException[transfers.size()];
+        for (int i = 0; i < transfers.size(); i++) {
+            Transfer t = transfers.get(i);
+            errors[i] = check(t, owners, balances);
+            if (errors[i] == null) {
+                balances.put(t.fromCardId(), balances.get(t.fromCardId()) - t.amount());
+                balances.put(t.toCardId(), balances.get(t.toCardId()) + t.amount());
+            }
+        }
+        // Порядок записи не важен: все строки уже заблокированы этой транзакцией
+        balances.forEach((cardId, balance) -> {
+            if (!balance.equals(locked.get(cardId))) {
+                cardRepository.setBalance(cardId, balance);
+            }
+        });
+        return errors;
+    }
+
+    // Те же причины отказа, что у debit/credit
+    private static RuntimeException check(Transfer t, Map<Long, Long> owners, Map<Long, Double> balances) {
+        Long fromOwnerId = owners.get(t.fromCardId());
+        if (fromOwnerId == null) {
+            return new RuntimeException("Source card not found");
+        }
+        if (!fromOwnerId.equals(t.ownerId())) {
+            return new RuntimeException("Access denied");
+        }
+        Long toOwnerId = owners.get(t.toCardId());
+        if (toOwnerId == null) {
+            return new RuntimeException("Destination card not found");
+        }
+        if (!toOwnerId.equals(t.ownerId())) {
+            return new RuntimeException("Access denied");
+        }
+        if (balances.get(t.fromCardId()) < t.amount()) {
+            return new RuntimeException("Insufficient balance");
+        }
+        return null;
+    }
+
+    private void debit(Long ownerId, Long cardId, Double amount) {
+        if (cardRepository.debit(cardId, ownerId, amount) == 0) {
+            Optional<Long> cardOwnerId = cardRepository.findOwnerIdById(cardId);
+            if (cardOwnerId.isEmpty()) {
+                throw new RuntimeException("Source card not found");
+            }
+            if (!cardOwnerId.get().equals(ownerId)) {
+                throw new RuntimeException("Access denied");
+            }
+            throw new RuntimeException("Insufficient balance");
+        }
+    }
+
+    private void credit(Long ownerId, Long cardId, Double amount) {
+        if (cardRepository.credit(cardId, ownerId, amount) == 0) {
+            if (cardRepository.findOwnerIdById(cardId).isEmpty()) {
+                throw new RuntimeException("Destination card not found");
+            }
+            throw new RuntimeException("Access denied");
+        }
+    }
+
+    public record Transfer(Long ownerId, Long fromCardId, Long toCardId, Double amount) {
+    }
+}
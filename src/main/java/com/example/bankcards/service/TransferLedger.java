@@ -0,0 +1,175 @@
+package com.example.bankcards.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Журнал переводов (таблица transfers). Записи ставятся в ограниченную очередь после коммита перевода
+// и пишутся отдельным потоком многострочными batch-INSERT — по достижении batch-size или по истечении flush-interval.
+// При переполнении очереди запись выполняется синхронно в потоке запроса: давление вместо потери строк.
+// Строки не отбрасываются: неудавшаяся запись повторяется с растущей паузой, пока не пройдёт. Пока БД недоступна,
+// очередь заполняется и переводы ждут синхронной записи — переводы замедляются, журнал не теряет строк.
+// При остановке приложения очередь дописывается до конца (и ждёт БД так же).
+@Component
+public class TransferLedger {
+    private static final Logger logger = LoggerFactory.getLogger(TransferLedger.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO transfers (owner_id, from_card_id, to_card_id, amount, created_at) VALUES (?, ?, ?, ?, ?)";
+    private static final long RETRY_PAUSE_MS = 200;
+    private static final long MAX_RETRY_PAUSE_MS = 10_000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+    private static final long STOP_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlockingQueue<Object[]> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    // record() проверяет running и ставит строку в очередь под read-блокировкой, stop() сбрасывает running
+    // под write-блокировкой: после сброса в очередь ничего не попадает, и финальный drainTo забирает всё
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public TransferLedger(JdbcTemplate jdbcTemplate,
+                          @Value("${transfer.ledger.queue-capacity:10000}") int queueCapacity,
+                          @Value("${transfer.ledger.batch-size:500}") int batchSize,
+                          @Value("${transfer.ledger.flush-interval-ms:50}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = new Thread(this::run, "transfer-ledger");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        closeLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join(SHUTDOWN_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Остаток очереди (в том числе записи, поставленные во время остановки) дописывается здесь же
+        List<Object[]> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (int from = 0; from < rest.size(); from += batchSize) {
+            write(rest.subList(from, Math.min(from + batchSize, rest.size())));
+        }
+    }
+
+    public void record(Long ownerId, Long fromCardId, Long toCardId, Double amount) {
+        Object[] row = {ownerId, fromCardId, toCardId, amount, Timestamp.from(Instant.now())};
+        boolean queued;
+        closeLock.readLock().lock();
+        try {
+            queued = running && queue.offer(row);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        if (!queued) {
+            write(List.of(row));
+        }
+    }
+
+    int pending() {
+        return queue.size();
+    }
+
+    private void run() {
+        // Ожидание в очереди ограничено pollNanos, чтобы остановка замечалась быстро и при большом flush-interval
+        long pollNanos = Math.min(flushIntervalNanos, STOP_CHECK_NANOS);
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        try {
+            while (running) {
+                Object[] first = queue.poll(pollNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize && running) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Object[] next = queue.poll(Math.min(remaining, pollNanos), TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            write(batch);
+        }
+    }
+
+    private void write(List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        long pause = RETRY_PAUSE_MS;
+        boolean interrupted = false;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+                    return;
+                } catch (DataAccessException e) {
+                    // Балансы уже изменены: строки журнала остаются в памяти до успешной записи
+                    if (attempt == 1) {
+                        logger.error("Transfer ledger write failed, retrying {} rows", rows.size(), e);
+                    } else {
+                        logger.error("Transfer ledger write failed (attempt {}, {} rows): {}",
+                                attempt, rows.size(), e.getMessage());
+                    }
+                    try {
+                        Thread.sleep(pause);
+                    } catch (InterruptedException ie) {
+                        // Прерывание (остановка) не отменяет запись: флаг восстанавливается после неё
+                        interrupted = true;
+                    }
+                    pause = Math.min(pause * 2, MAX_RETRY_PAUSE_MS);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
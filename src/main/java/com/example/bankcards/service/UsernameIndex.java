@@ -0,0 +1,315 @@
+package com.example.bankcards.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+// Триграммный индекс usernames в памяти: поиск подстроки в админке вместо LIKE '%term%' по всей users.
+// Триграммы — по байтам UTF-8 (подстрока в UTF-8 — это подстрока байтов); регистр учитывается, как в LIKE.
+// Пользователь занимает слот: id и имя в общем byte[]. Posting list триграммы — int[] номеров слотов по возрастанию.
+// Кандидаты — пересечение списков всех триграмм запроса, затем проверка подстроки по байтам имени.
+// Строится при старте потоковым чтением users, дальше обновляется при создании и удалении пользователей.
+// Удалённый слот только помечается; его место в списках освобождается при следующем старте.
+@Component
+public class UsernameIndex {
+
+    // Короче триграммы индекс не помогает — такие запросы идут в БД
+    public static final int MIN_TERM_BYTES = 3;
+    private static final long[] NONE = new long[0];
+    private static final int MISSING = -1;
+    private static final int REMOVED = -2; // Удалён раньше, чем стартовая загрузка дошла до его строки
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final int fetchSize;
+    private final StampedLock lock = new StampedLock();
+    private volatile boolean ready;
+
+    // Слоты
+    private long[] slotIds = new long[1024];
+    private int[] nameStarts = new int[1025]; // имя слота s — names[nameStarts[s], nameStarts[s + 1])
+    private byte[] names = new byte[16 * 1024];
+    private long[] dead = new long[16];
+    private int slots;
+    private int live;
+
+    private final LongIntMap slotById = new LongIntMap();
+    // Триграмма -> номер posting list
+    private final LongIntMap listByGram = new LongIntMap();
+    private int[][] postings = new int[1024][];
+    private int[] postingSizes = new int[1024];
+    private int lists;
+
+    public UsernameIndex(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         @Value("${users.search-index.fetch-size:10000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionManager = transactionManager;
+        this.fetchSize = fetchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        // Драйвер PostgreSQL отдаёт строки порциями только с fetchSize и вне autocommit
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(fetchSize);
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        // Создания и удаления во время загрузки применяются сразу: add идемпотентен, удалённый id помечен REMOVED
+        readOnly.executeWithoutResult(status -> streaming.query(
+                "SELECT id, username FROM users ORDER BY id",
+                (RowCallbackHandler) rs -> add(rs.getLong(1), rs.getString(2))));
+        ready = true;
+    }
+
+    // id пользователей, чьё имя содержит term, по возрастанию id; null — индекс не может ответить
+    // (ещё не загружен или term короче триграммы), искать нужно в БД
+    public long[] search(String term) {
+        byte[] pattern = term.getBytes(StandardCharsets.UTF_8);
+        if (!ready || pattern.length < MIN_TERM_BYTES) {
+            return null;
+        }
+        long stamp = lock.readLock();
+        try {
+            return searchLocked(pattern);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void add(long id, String username) {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        long stamp = lock.writeLock();
+        try {
+            if (slotById.get(id) != MISSING) {
+                return;
+            }
+            int slot = newSlot(id, name);
+            slotById.put(id, slot);
+            for (int i = 0; i + MIN_TERM_BYTES <= name.length; i++) {
+                append(gram(name, i), slot);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(long id) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotById.get(id);
+            if (slot >= 0 && !isDead(slot)) {
+                dead[slot >>> 6] |= 1L << slot;
+                live--;
+            } else if (slot == MISSING) {
+                slotById.put(id, REMOVED);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return live;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private long[] searchLocked(byte[] pattern) {
+        int grams = pattern.length - MIN_TERM_BYTES + 1;
+        int[] termLists = new int[grams];
+        for (int i = 0; i < grams; i++) {
+            int list = listByGram.get(gram(pattern, i));
+            if (list == MISSING) {
+                return NONE;
+            }
+            termLists[i] = list;
+        }
+        // От самого короткого списка: кандидатов не больше, чем в нём
+        sortBySize(termLists);
+        int[] shortest = postings[termLists[0]];
+        int[] candidates = Arrays.copyOf(shortest, postingSizes[termLists[0]]);
+        int count = candidates.length;
+        for (int k = 1; k < grams && count > 0; k++) {
+            if (termLists[k] != termLists[k - 1]) {
+                count = retainAll(candidates, count, postings[termLists[k]], postingSizes[termLists[k]]);
+            }
+        }
+        long[] ids = new long[count];
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = candidates[i];
+            // Совпадение триграмм не означает подстроку (abcXbcd для abcd); у запроса из одной триграммы — означает
+            if (!isDead(slot) && (grams == 1 || contains(slot, pattern))) {
+                ids[found++] = slotIds[slot];
+            }
+        }
+        ids = Arrays.copyOf(ids, found);
+        // Слоты выдаются по порядку загрузки; созданные во время стартовой загрузки могут оказаться не на своём месте
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private void sortBySize(int[] termLists) {
+        for (int i = 1; i < termLists.length; i++) {
+            int list = termLists[i];
+            int j = i - 1;
+            while (j >= 0 && postingSizes[termLists[j]] > postingSizes[list]) {
+                termLists[j + 1] = termLists[j];
+                j--;
+            }
+            termLists[j + 1] = list;
+        }
+    }
+
+    // Оставляет в candidates[0, count) только слоты из list; обе последовательности возрастают.
+    // Кандидатов обычно намного меньше, поэтому в list — двоичный поиск от последней найденной позиции
+    private static int retainAll(int[] candidates, int count, int[] list, int listSize) {
+        int kept = 0;
+        int from = 0;
+        for (int i = 0; i < count && from < listSize; i++) {
+            int pos = Arrays.binarySearch(list, from, listSize, candidates[i]);
+            if (pos >= 0) {
+                candidates[kept++] = candidates[i];
+                from = pos + 1;
+            } else {
+                from = -pos - 1;
+            }
+        }
+        return kept;
+    }
+
+    private boolean contains(int slot, byte[] pattern) {
+        int start = nameStarts[slot];
+        int last = nameStarts[slot + 1] - pattern.length;
+        outer:
+        for (int i = start; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (names[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isDead(int slot) {
+        return (dead[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private int newSlot(long id, byte[] name) {
+        int slot = slots++;
+        if (slot == slotIds.length) {
+            slotIds = Arrays.copyOf(slotIds, slot * 2);
+            nameStarts = Arrays.copyOf(nameStarts, slot * 2 + 1);
+            dead = Arrays.copyOf(dead, (slot * 2 + 63) / 64);
+        }
+        int start = nameStarts[slot];
+        if (start + name.length > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, start + name.length));
+        }
+        System.arraycopy(name, 0, names, start, name.length);
+        slotIds[slot] = id;
+        nameStarts[slot + 1] = start + name.length;
+        live++;
+        return slot;
+    }
+
+    private void append(long gram, int slot) {
+        int list = listByGram.get(gram);
+        if (list == MISSING) {
+            list = lists++;
+            if (list == postings.length) {
+                postings = Arrays.copyOf(postings, list * 2);
+                postingSizes = Arrays.copyOf(postingSizes, list * 2);
+            }
+            postings[list] = new int[4];
+            listByGram.put(gram, list);
+        }
+        int size = postingSizes[list];
+        int[] posting = postings[list];
+        // Повтор триграммы в одном имени (aaaa) — слот уже в конце списка
+        if (size > 0 && posting[size - 1] == slot) {
+            return;
+        }
+        if (size == posting.length) {
+            posting = Arrays.copyOf(posting, size + (size >> 1) + 1);
+            postings[list] = posting;
+        }
+        posting[size] = slot;
+        postingSizes[list] = size + 1;
+    }
+
+    // Три байта в 24 битах; ноль невозможен (в тексте PostgreSQL нет NUL) и служит пустым ключом
+    private static long gram(byte[] bytes, int i) {
+        return ((bytes[i] & 0xFFL) << 16) | ((bytes[i + 1] & 0xFFL) << 8) | (bytes[i + 2] & 0xFFL);
+    }
+
+    // Открытая адресация long -> int без упаковки (как в TokenVersionRegistry); 0 — пустой ключ
+    private static final class LongIntMap {
+        private long[] keys = new long[1024];
+        private int[] values = new int[1024];
+        private int size;
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = index(key, mask); ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) {
+                    return values[i];
+                }
+                if (k == 0) {
+                    return MISSING;
+                }
+            }
+        }
+
+        void put(long key, int value) {
+            int mask = keys.length - 1;
+            int i = index(key, mask);
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            // Заполнение не выше 1/2: пробы короткие и пустая ячейка всегда есть
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int index(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.bankcards.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+// Шифрование номеров карт.
+// Новый формат: Base64(0x01 | IV 12 байт | AES-GCM шифротекст + тег 16 байт).
+// Старый формат (AES/CBC): Base64(IV 16 байт | шифротекст), его длина всегда кратна 16,
+// а запись GCM для 16-значного номера занимает 45 байт, поэтому форматы различаются однозначно.
+// Ключ создаётся один раз, Cipher переиспользуется в пределах потока.
+@Component
+public class CardCipher {
+
+    private static final byte VERSION_GCM = 1;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+    private static final int GCM_HEADER_LENGTH = 1 + GCM_IV_LENGTH;
+    private static final int CBC_IV_LENGTH = 16;
+    private static final int CARD_NUMBER_LENGTH = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Cipher> gcm = ThreadLocal.withInitial(() -> newCipher("AES/GCM/NoPadding"));
+    private final ThreadLocal<Cipher> cbc = ThreadLocal.withInitial(() -> newCipher("AES/CBC/PKCS5Padding"));
+
+    public CardCipher(@Value("${encryption.key}") String encryptionKey) {
+        this.key = new SecretKeySpec(encryptionKey.getBytes(StandardCharsets.UTF_8), "AES");
+    }
+
+    public String encrypt(String cardNumber) {
+        if (cardNumber.length() != CARD_NUMBER_LENGTH) {
+            throw new IllegalArgumentException("Card number must be 16 digits");
+        }
+        byte[] plain = cardNumber.getBytes(StandardCharsets.US_ASCII);
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        RANDOM.nextBytes(iv);
+        byte[] out = new byte[GCM_HEADER_LENGTH + plain.length + GCM_TAG_BITS / 8];
+        out[0] = VERSION_GCM;
+        System.arraycopy(iv, 0, out, 1, GCM_IV_LENGTH);
+        try {
+            Cipher cipher = gcm.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            cipher.doFinal(plain, 0, plain.length, out, GCM_HEADER_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Encryption error", e);
+        }
+        return Base64.getEncoder().encodeToString(out);
+    }
+
+    public String decrypt(String encryptedCardNumber) {
+        return decrypt(encryptedCardNumber, gcm.get(), cbc.get());
+    }
+
+    // Пакетная расшифровка: Cipher берётся из ThreadLocal один раз на весь список
+    public List<String> decryptAll(List<String> encryptedCardNumbers) {
+        Cipher gcmCipher = gcm.get();
+        Cipher cbcCipher = cbc.get();
+        List<String> result = new ArrayList<>(encryptedCardNumbers.size());
+        for (String encrypted : encryptedCardNumbers) {
+            result.add(decrypt(encrypted, gcmCipher, cbcCipher));
+        }
+        return result;
+    }
+
+    private String decrypt(String encryptedCardNumber, Cipher gcmCipher, Cipher cbcCipher) {
+        byte[] data;
+        try {
+            data = Base64.getDecoder().decode(encryptedCardNumber);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Decryption error: Invalid Base64", e);
+        }
+        try {
+            byte[] plain;
+            if (data.length % 16 != 0 && data.length > GCM_HEADER_LENGTH && data[0] == VERSION_GCM) {
+                gcmCipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, data, 1, GCM_IV_LENGTH));
+                plain = gcmCipher.doFinal(data, GCM_HEADER_LENGTH, data.length - GCM_HEADER_LENGTH);
+            } else if (data.length > CBC_IV_LENGTH) {
+                cbcCipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(data, 0, CBC_IV_LENGTH));
+                plain = cbcCipher.doFinal(data, CBC_IV_LENGTH, data.length - CBC_IV_LENGTH);
+            } else {
+                throw new RuntimeException("Decryption error: Invalid length");
+            }
+            return new String(plain, StandardCharsets.US_ASCII);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Decryption error", e);
+        }
+    }
+
+    private static Cipher newCipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot create cipher " + transformation, e);
+        }
+    }
+}
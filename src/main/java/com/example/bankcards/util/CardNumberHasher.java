@@ -0,0 +1,60 @@
+package com.example.bankcards.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+// Blind index для номеров карт: HMAC-SHA256 по отдельному ключу.
+// Позволяет искать карту по полному номеру или последним 4 цифрам через обычный индекс,
+// не расшифровывая card_number и не раскрывая номер в БД.
+@Component
+public class CardNumberHasher {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    // Разные домены, чтобы хэш "1234" как last4 не совпадал с хэшем другого типа значения
+    private static final byte PAN_DOMAIN = 'P';
+    private static final byte LAST4_DOMAIN = 'L';
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> mac;
+
+    public CardNumberHasher(@Value("${encryption.index-key}") String indexKey) {
+        this.key = new SecretKeySpec(indexKey.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.mac = ThreadLocal.withInitial(this::newMac);
+    }
+
+    public String hashPan(String cardNumber) {
+        return hash(PAN_DOMAIN, cardNumber);
+    }
+
+    public String hashLast4(String last4) {
+        return hash(LAST4_DOMAIN, last4);
+    }
+
+    private String hash(byte domain, String value) {
+        Mac hmac = mac.get();
+        hmac.update(domain);
+        byte[] digest = hmac.doFinal(value.getBytes(StandardCharsets.US_ASCII));
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX[(digest[i] >> 4) & 0x0F];
+            hex[i * 2 + 1] = HEX[digest[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac hmac = Mac.getInstance(ALGORITHM);
+            hmac.init(key);
+            return hmac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize " + ALGORITHM, e);
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.example.bankcards.util;
 
+import com.example.bankcards.security.UserPrincipal;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -11,6 +17,7 @@ import javax.crypto.SecretKey;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 @Component
@@ -21,9 +28,40 @@ public class JwtUtil {
     @Value("${jwt.expiration}")
     private long JWT_TOKEN_VALIDITY;
 
-    // Преобразование строкового ключа в SecretKey для HS256
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
+    @Value("${jwt.verified-cache-size:10000}")
+    private long verifiedCacheSize;
+
+    // Ключ и парсер потокобезопасны и создаются один раз
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    // Уже проверенные токены: ключ — сегмент подписи (HMAC от заголовка и тела, т.е. дайджест токена),
+    // запись живёт до exp токена. При попадании токен сравнивается целиком, поэтому подделать запись нельзя.
+    private Cache<String, VerifiedToken> verifiedTokens;
+
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
+        parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, value.expiresAt - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
     }
 
     public String extractEmail(String token) {
@@ -35,20 +73,28 @@ public class JwtUtil {
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
+        final Claims claims = parseToken(token);
         return claimsResolver.apply(claims);
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    // Проверка подписи и срока действия; результат кэшируется до exp.
+    // Возвращаемые Claims общие для всех запросов с этим токеном — только для чтения.
+    public Claims parseToken(String token) {
+        String signature = token.substring(token.lastIndexOf('.') + 1);
+        VerifiedToken cached = verifiedTokens.getIfPresent(signature);
+        if (cached != null && cached.token.equals(token) && cached.expiresAt > System.currentTimeMillis()) {
+            return cached.claims;
+        }
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        Date expiration = claims.getExpiration();
+        if (expiration != null && !signature.isEmpty()) {
+            verifiedTokens.put(signature, new VerifiedToken(token, claims, expiration.getTime()));
+        }
+        return claims;
     }
 
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    private Boolean isTokenExpired(Claims claims) {
+        return claims.getExpiration().before(new Date());
     }
 
     public String generateToken(String email) {
@@ -56,20 +102,29 @@ public class JwtUtil {
         return createToken(claims, email);
     }
 
+    // Токен с id, ролью и версией токенов пользователя: по нему запрос аутентифицируется без чтения users
+    public String generateToken(UserPrincipal principal) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(UserPrincipal.CLAIM_USER_ID, principal.getId());
+        claims.put(UserPrincipal.CLAIM_ROLE, principal.getRole());
+        claims.put(UserPrincipal.CLAIM_TOKEN_VERSION, principal.getTokenVersion());
+        return createToken(claims, principal.getUsername());
+    }
+
     private String createToken(Map<String, Object> claims, String subject) {
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + JWT_TOKEN_VALIDITY))
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
 
     public Boolean validateToken(String token, String email) {
         try {
-            final String extractedEmail = extractEmail(token);
-            return (extractedEmail.equals(email) && !isTokenExpired(token));
+            final Claims claims = parseToken(token);
+            return (claims.getSubject().equals(email) && !isTokenExpired(claims));
         } catch (ExpiredJwtException e) {
             // Токен просрочен
             return false;
@@ -79,4 +134,15 @@ public class JwtUtil {
         }
     }
 
-}
\ No newline at end of file
+    private static final class VerifiedToken {
+        final String token;
+        final Claims claims;
+        final long expiresAt;
+
+        VerifiedToken(String token, Claims claims, long expiresAt) {
+            this.token = token;
+            this.claims = claims;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.bankcards.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Курсор keyset-пагинации: сортировка, значение ключа и id последней строки страницы.
+// Для клиента непрозрачен (base64url); сортировка внутри не даёт продолжить курсор с другим порядком.
+public final class KeysetCursor {
+
+    private final String sort;
+    private final String key;
+    private final long id;
+
+    private KeysetCursor(String sort, String key, long id) {
+        this.sort = sort;
+        this.key = key;
+        this.id = id;
+    }
+
+    public static String encode(String sort, String key, long id) {
+        String raw = sort + ":" + id + ":" + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KeysetCursor decode(String cursor, String expectedSort) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 3);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+        if (parts.length != 3 || !parts[0].equals(expectedSort)) {
+            throw new RuntimeException("Invalid cursor");
+        }
+        try {
+            return new KeysetCursor(parts[0], parts[2], Long.parseLong(parts[1]));
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+    }
+
+    public String getSort() {
+        return sort;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.util.CardCipher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Прежний путь (Cipher.getInstance + SecretKeySpec + SecureRandom на каждый вызов, AES/CBC)
+// против CardCipher (ключ создаётся один раз, Cipher на поток, AES/GCM) на странице из 1000 карт.
+// Запуск: mvn test-compile, затем main() этого класса с тестовым classpath.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class CardCipherBenchmark {
+
+    private static final String ENCRYPTION_KEY = "Kj8pLm9nQ2vX4yZ8aB5cD6eF7gH9iJ0k";
+    private static final int PAGE_SIZE = 1000;
+    private static final String CARD_NUMBER = "4000001234567899";
+
+    private final CardCipher cardCipher = new CardCipher(ENCRYPTION_KEY);
+    private List<String> legacyPage;
+    private List<String> gcmPage;
+
+    @Setup
+    public void setup() throws Exception {
+        legacyPage = new ArrayList<>(PAGE_SIZE);
+        gcmPage = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            legacyPage.add(LegacyCardCrypto.encrypt(ENCRYPTION_KEY, CARD_NUMBER));
+            gcmPage.add(cardCipher.encrypt(CARD_NUMBER));
+        }
+    }
+
+    @Benchmark
+    public String legacyEncrypt() throws Exception {
+        return LegacyCardCrypto.encrypt(ENCRYPTION_KEY, CARD_NUMBER);
+    }
+
+    @Benchmark
+    public String pooledEncrypt() {
+        return cardCipher.encrypt(CARD_NUMBER);
+    }
+
+    @Benchmark
+    public void legacyDecryptPage(Blackhole bh) throws Exception {
+        for (String encrypted : legacyPage) {
+            bh.consume(LegacyCardCrypto.decrypt(ENCRYPTION_KEY, encrypted));
+        }
+    }
+
+    @Benchmark
+    public void pooledDecryptLegacyPage(Blackhole bh) {
+        for (String encrypted : legacyPage) {
+            bh.consume(cardCipher.decrypt(encrypted));
+        }
+    }
+
+    @Benchmark
+    public List<String> pooledDecryptAllGcmPage() {
+        return cardCipher.decryptAll(gcmPage);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CardCipherBenchmark.class.getSimpleName()).build()).run();
+    }
+}
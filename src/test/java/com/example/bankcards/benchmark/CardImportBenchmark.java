@@ -0,0 +1,87 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.BankCardsApplication;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.service.CardImportService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Выпуск карт через CardImportService.importCsv на реальной БД: разбор CSV, порции по CHUNK_SIZE,
+// шифрование номеров и saveAll. Операция — одна карта, результат — карты в секунду.
+// Контекст приложения поднимается один раз; выпущенные карты удаляются после каждой итерации.
+// Запуск: mvn test-compile, затем main() этого класса с тестовым classpath (БД из application.yml).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(CardImportBenchmark.ROWS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CardImportBenchmark {
+
+    static final int ROWS = 10_000;
+
+    private ConfigurableApplicationContext context;
+    private CardImportService cardImportService;
+    private JdbcTemplate jdbcTemplate;
+    private UserRepository userRepository;
+    private User owner;
+    private byte[] csv;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(BankCardsApplication.class)
+                .properties("server.port=0")
+                .run();
+        cardImportService = context.getBean(CardImportService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        userRepository = context.getBean(UserRepository.class);
+
+        owner = new User();
+        owner.setUsername("bench-import-" + UUID.randomUUID());
+        owner.setPassword("n/a");
+        owner.setRole("USER");
+        owner = userRepository.save(owner);
+
+        String line = owner.getUsername() + "," + LocalDate.now().plusYears(3) + ",100\n";
+        StringBuilder builder = new StringBuilder("ownerUsername,expiryDate,initialBalance\n");
+        for (int i = 0; i < ROWS; i++) {
+            builder.append(line);
+        }
+        csv = builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteCards() {
+        jdbcTemplate.update("DELETE FROM cards WHERE owner_id = ?", owner.getId());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        userRepository.deleteById(owner.getId());
+        context.close();
+    }
+
+    @Benchmark
+    public void importCsv(Blackhole bh) throws IOException {
+        bh.consume(cardImportService.importCsv(new ByteArrayInputStream(csv)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CardImportBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.util.CardNumberHasher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Сравнение поиска карт пользователя по последним 4 цифрам:
+// - likeOverCiphertext: старый путь (LIKE '%query%' по Base64 шифротексту) — быстрый, но ничего не находит;
+// - decryptAndFilter: единственный корректный вариант без индекса — расшифровка каждой строки;
+// - blindIndexLookup: HMAC запроса + поиск по индексу (owner_id, last4_hmac).
+// Запуск: mvn test-compile, затем main() этого класса с тестовым classpath.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CardSearchBenchmark {
+
+    private static final String ENCRYPTION_KEY = "Kj8pLm9nQ2vX4yZ8aB5cD6eF7gH9iJ0k";
+
+    @Param({"100", "1000"})
+    private int cardsPerOwner;
+
+    private final CardNumberHasher hasher = new CardNumberHasher("benchmark-index-key");
+    private List<String> encryptedNumbers;
+    private Map<String, List<Integer>> last4Index;
+    private String query;
+
+    @Setup
+    public void setup() throws Exception {
+        Random random = new Random(42);
+        encryptedNumbers = new ArrayList<>(cardsPerOwner);
+        last4Index = new HashMap<>();
+        for (int i = 0; i < cardsPerOwner; i++) {
+            StringBuilder number = new StringBuilder("4");
+            for (int d = 0; d < 15; d++) {
+                number.append(random.nextInt(10));
+            }
+            String cardNumber = number.toString();
+            encryptedNumbers.add(LegacyCardCrypto.encrypt(ENCRYPTION_KEY, cardNumber));
+            last4Index.computeIfAbsent(hasher.hashLast4(cardNumber.substring(12)), k -> new ArrayList<>()).add(i);
+            if (i == cardsPerOwner / 2) {
+                query = cardNumber.substring(12);
+            }
+        }
+    }
+
+    @Benchmark
+    public void likeOverCiphertext(Blackhole bh) {
+        int matches = 0;
+        for (String encrypted : encryptedNumbers) {
+            if (encrypted.contains(query)) {
+                matches++;
+            }
+        }
+        bh.consume(matches);
+    }
+
+    @Benchmark
+    public void decryptAndFilter(Blackhole bh) throws Exception {
+        int matches = 0;
+        for (String encrypted : encryptedNumbers) {
+            if (LegacyCardCrypto.decrypt(ENCRYPTION_KEY, encrypted).endsWith(query)) {
+                matches++;
+            }
+        }
+        bh.consume(matches);
+    }
+
+    @Benchmark
+    public void blindIndexLookup(Blackhole bh) {
+        bh.consume(last4Index.getOrDefault(hasher.hashLast4(query), List.of()).size());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CardSearchBenchmark.class.getSimpleName()).build()).run();
+    }
+}
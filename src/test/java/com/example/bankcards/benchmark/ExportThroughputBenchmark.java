@@ -0,0 +1,153 @@
+package com.example.bankcards.benchmark;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Пропускная способность /api/admin/cards/export (строк в секунду) и куча приложения во время выгрузки.
+// Это не JMH: выгрузка идёт с запущенного приложения по HTTP, тело читается и только считается.
+// Куча берётся из /actuator/metrics раз в полсекунды; при потоковой выгрузке максимум не растёт с числом карт,
+// поэтому приложение стоит запускать с небольшой кучей — 10M карт должны выгружаться и при -Xmx256m.
+//
+// Запуск: java -Xmx256m -jar app.jar, затем main() этого класса с тестовым classpath:
+//   -Dbench.url=http://localhost:8081 -Dbench.token=<JWT администратора> -Dbench.formats=ndjson,csv
+//   -Dbench.seed-cards=10000000 (дозаполнить cards синтетическими картами до этого числа; 0 — не заполнять)
+//   -Dbench.jdbc-url=jdbc:postgresql://localhost:5432/bankdb -Dbench.jdbc-user=postgres -Dbench.jdbc-password=root
+public class ExportThroughputBenchmark {
+
+    private static final String PREFIX = "bench-export-";
+    private static final int SEED_USERS = 10_000;
+    private static final int SEED_CHUNK = 1_000_000;
+    private static final Pattern METRIC_VALUE = Pattern.compile("\"value\"\\s*:\\s*([0-9.eE+-]+)");
+
+    public static void main(String[] args) throws Exception {
+        String url = System.getProperty("bench.url", "http://localhost:8081");
+        String token = System.getProperty("bench.token", "");
+        String[] formats = System.getProperty("bench.formats", "ndjson,csv").split(",");
+        long seedCards = Long.getLong("bench.seed-cards", 10_000_000L);
+
+        if (seedCards > 0) {
+            seed(seedCards);
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        System.out.printf("%-8s %12s %10s %12s %10s %14s%n", "format", "rows", "seconds", "rows/s", "MB/s", "max heap MB");
+        for (String format : formats) {
+            HeapSampler heap = new HeapSampler(client, url, token);
+            Thread sampler = Thread.ofVirtual().start(heap);
+            long start = System.nanoTime();
+            long[] counted = download(client, request(url + "/api/admin/cards/export?format=" + format.trim(), token));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            sampler.interrupt();
+            sampler.join();
+            // В CSV первая строка — заголовок
+            long rows = "csv".equals(format.trim()) ? counted[0] - 1 : counted[0];
+            System.out.printf("%-8s %12d %10.1f %12.0f %10.1f %14.0f%n", format.trim(), rows, seconds,
+                    rows / seconds, counted[1] / seconds / (1 << 20), heap.max.get() / (double) (1 << 20));
+        }
+    }
+
+    // {строк, байт}
+    private static long[] download(HttpClient client, HttpRequest request) throws Exception {
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Export failed: HTTP " + response.statusCode());
+        }
+        long lines = 0;
+        long bytes = 0;
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream body = response.body()) {
+            for (int n; (n = body.read(buffer)) > 0; ) {
+                bytes += n;
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == '\n') {
+                        lines++;
+                    }
+                }
+            }
+        }
+        return new long[]{lines, bytes};
+    }
+
+    private static HttpRequest request(String url, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).GET();
+        if (!token.isEmpty()) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    // Дозаполняет cards до total строк порциями по SEED_CHUNK; владельцы — SEED_USERS синтетических пользователей
+    private static void seed(long total) throws Exception {
+        String jdbcUrl = System.getProperty("bench.jdbc-url", "jdbc:postgresql://localhost:5432/bankdb");
+        try (Connection connection = DriverManager.getConnection(jdbcUrl,
+                System.getProperty("bench.jdbc-user", "postgres"), System.getProperty("bench.jdbc-password", "root"));
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO users (username, password, role) "
+                    + "SELECT '" + PREFIX + "' || g, 'n/a', 'USER' FROM generate_series(0, " + (SEED_USERS - 1) + ") g "
+                    + "ON CONFLICT (username) DO NOTHING");
+            long existing;
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM cards")) {
+                rs.next();
+                existing = rs.getLong(1);
+            }
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO cards "
+                    + "(id, card_number, owner_id, expiry_date, status, balance, pan_hmac, last4_hmac, last4) "
+                    + "SELECT nextval('card_id_seq'), '" + PREFIX + "' || g, u.id, CURRENT_DATE + (g % 1500)::int, "
+                    + "CASE WHEN g % 10 = 0 THEN 'BLOCKED' ELSE 'ACTIVE' END, (g % 100000) / 100.0, "
+                    + "md5('" + PREFIX + "' || g), md5('" + PREFIX + "' || g % 10000), lpad((g % 10000)::text, 4, '0') "
+                    + "FROM generate_series(?::bigint, ?::bigint) g "
+                    + "JOIN users u ON u.username = '" + PREFIX + "' || (g % " + SEED_USERS + ")")) {
+                for (long from = existing; from < total; from += SEED_CHUNK) {
+                    insert.setLong(1, from);
+                    insert.setLong(2, Math.min(from + SEED_CHUNK, total) - 1);
+                    insert.executeUpdate();
+                    System.out.printf("seeded %d / %d cards%n", Math.min(from + SEED_CHUNK, total), total);
+                }
+            }
+            statement.execute("ANALYZE cards");
+        }
+    }
+
+    private static final class HeapSampler implements Runnable {
+        final AtomicLong max = new AtomicLong();
+        private final HttpClient client;
+        private final HttpRequest request;
+
+        HeapSampler(HttpClient client, String url, String token) {
+            this.client = client;
+            this.request = request(url + "/actuator/metrics/jvm.memory.used?tag=area:heap", token);
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Matcher value = METRIC_VALUE.matcher(client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+                    if (value.find()) {
+                        max.accumulateAndGet((long) Double.parseDouble(value.group(1)), Math::max);
+                    }
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    // Пропуск замера; выгрузка продолжается
+                }
+            }
+        }
+    }
+}
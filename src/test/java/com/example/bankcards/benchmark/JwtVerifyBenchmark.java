@@ -0,0 +1,76 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+// Стоимость аутентификации одного запроса по JWT:
+// - legacyFilter: как было — extractEmail дважды и validateToken (ещё два разбора), каждый раз новый ключ и парсер;
+// - singleParse: один разбор заранее созданным парсером, без кэша;
+// - cachedParse: JwtUtil.parseToken для повторно используемого токена.
+// Запуск: mvn test-compile, затем main() этого класса с тестовым classpath.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class JwtVerifyBenchmark {
+
+    private static final String SECRET = "K7mN9pQ2vL8jR4tY5uI6oP1wQ3eA8xZ9oX7kP9mQ2vL8jR4tY";
+
+    private final JwtUtil jwtUtil = new JwtUtil();
+    private final JwtParser parser = Jwts.parserBuilder().setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes())).build();
+    private String token;
+
+    @Setup
+    public void setup() {
+        ReflectionTestUtils.setField(jwtUtil, "SECRET_KEY", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "JWT_TOKEN_VALIDITY", 3_600_000L);
+        ReflectionTestUtils.setField(jwtUtil, "verifiedCacheSize", 10_000L);
+        ReflectionTestUtils.invokeMethod(jwtUtil, "init");
+        token = jwtUtil.generateToken("user@example.com");
+    }
+
+    @Benchmark
+    public boolean legacyFilter() {
+        String email = legacyParse(token).getSubject();
+        String again = legacyParse(token).getSubject();
+        return legacyParse(token).getSubject().equals(email)
+                && !legacyParse(token).getExpiration().before(new Date())
+                && again.equals(email);
+    }
+
+    @Benchmark
+    public String singleParse() {
+        return parser.parseClaimsJws(token).getBody().getSubject();
+    }
+
+    @Benchmark
+    public String cachedParse() {
+        return jwtUtil.parseToken(token).getSubject();
+    }
+
+    private static Claims legacyParse(String token) {
+        return Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes()))
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JwtVerifyBenchmark.class.getSimpleName()).build()).run();
+    }
+}
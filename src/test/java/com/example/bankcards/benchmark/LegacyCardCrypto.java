@@ -0,0 +1,39 @@
+package com.example.bankcards.benchmark;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+// Копия прежнего CardService.encryptCardNumber/decryptCardNumber — точка отсчёта для бенчмарков
+final class LegacyCardCrypto {
+
+    private LegacyCardCrypto() {
+    }
+
+    static String encrypt(String encryptionKey, String cardNumber) throws Exception {
+        SecretKeySpec key = new SecretKeySpec(encryptionKey.getBytes(StandardCharsets.UTF_8), "AES");
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        byte[] iv = new byte[16];
+        new SecureRandom().nextBytes(iv);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+        byte[] encrypted = cipher.doFinal(cardNumber.getBytes(StandardCharsets.UTF_8));
+        byte[] result = new byte[iv.length + encrypted.length];
+        System.arraycopy(iv, 0, result, 0, iv.length);
+        System.arraycopy(encrypted, 0, result, iv.length, encrypted.length);
+        return Base64.getEncoder().encodeToString(result);
+    }
+
+    static String decrypt(String encryptionKey, String encryptedCardNumber) throws Exception {
+        byte[] combined = Base64.getDecoder().decode(encryptedCardNumber);
+        byte[] iv = Arrays.copyOfRange(combined, 0, 16);
+        byte[] encrypted = Arrays.copyOfRange(combined, 16, combined.length);
+        SecretKeySpec key = new SecretKeySpec(encryptionKey.getBytes(StandardCharsets.UTF_8), "AES");
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+        return new String(cipher.doFinal(encrypted), StandardCharsets.UTF_8);
+    }
+}
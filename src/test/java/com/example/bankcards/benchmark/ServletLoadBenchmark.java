@@ -0,0 +1,120 @@
+package com.example.bankcards.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Нагрузочное сравнение потоков Tomcat и профиля virtual-threads: пропускная способность и p50/p99
+// при 1k и 10k одновременных клиентах (замкнутый цикл: каждый клиент шлёт следующий запрос сразу после ответа).
+// Это не JMH: нагрузка идёт на запущенное приложение по HTTP, клиенты — виртуальные потоки.
+//
+// Запуск (приложение на одной и той же БД, по очереди в двух режимах):
+//   java -jar app.jar --server.tomcat.max-connections=20000
+//   java -jar app.jar --spring.profiles.active=virtual-threads
+// затем main() этого класса с тестовым classpath:
+//   -Dbench.url=http://localhost:8081/api/user/cards?page=0&size=10 -Dbench.token=<JWT>
+//   -Dbench.clients=1000,10000 -Dbench.warmup-seconds=10 -Dbench.seconds=30
+// Для 10k клиентов нужен ulimit -n выше 20000 на обеих сторонах.
+public class ServletLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String url = System.getProperty("bench.url", "http://localhost:8081/api/user/cards?page=0&size=10");
+        String token = System.getProperty("bench.token", "");
+        int[] clientCounts = Arrays.stream(System.getProperty("bench.clients", "1000,10000").split(","))
+                .mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+        Duration warmup = Duration.ofSeconds(Long.getLong("bench.warmup-seconds", 10));
+        Duration measure = Duration.ofSeconds(Long.getLong("bench.seconds", 30));
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(60)).GET();
+        if (!token.isEmpty()) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        HttpRequest request = builder.build();
+
+        System.out.printf("%-8s %12s %10s %10s %10s %8s%n", "clients", "req/s", "p50 ms", "p99 ms", "max ms", "errors");
+        for (int clients : clientCounts) {
+            run(client, request, clients, warmup);
+            Result result = run(client, request, clients, measure);
+            System.out.printf("%-8d %12.0f %10.1f %10.1f %10.1f %8d%n", clients,
+                    result.latenciesNanos.length / (measure.toNanos() / 1e9),
+                    result.percentile(0.50) / 1e6, result.percentile(0.99) / 1e6, result.percentile(1.0) / 1e6,
+                    result.errors);
+        }
+    }
+
+    private static Result run(HttpClient client, HttpRequest request, int clients, Duration duration)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        AtomicLong errors = new AtomicLong();
+        long[][] perClient = new long[clients][];
+        int[] counts = new int[clients];
+        CountDownLatch done = new CountDownLatch(clients);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                int id = c;
+                executor.execute(() -> {
+                    long[] latencies = new long[1024];
+                    int n = 0;
+                    try {
+                        while (System.nanoTime() < deadline) {
+                            long start = System.nanoTime();
+                            try {
+                                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                                if (response.statusCode() != 200) {
+                                    errors.incrementAndGet();
+                                    continue;
+                                }
+                            } catch (Exception e) {
+                                errors.incrementAndGet();
+                                continue;
+                            }
+                            if (n == latencies.length) {
+                                latencies = Arrays.copyOf(latencies, n * 2);
+                            }
+                            latencies[n++] = System.nanoTime() - start;
+                        }
+                    } finally {
+                        perClient[id] = latencies;
+                        counts[id] = n;
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        }
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (int c = 0; c < clients; c++) {
+            System.arraycopy(perClient[c], 0, all, offset, counts[c]);
+            offset += counts[c];
+        }
+        Arrays.sort(all);
+        return new Result(all, errors.get());
+    }
+
+    private record Result(long[] latenciesNanos, long errors) {
+        double percentile(double p) {
+            if (latenciesNanos.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p * latenciesNanos.length) - 1;
+            return latenciesNanos[Math.max(0, Math.min(index, latenciesNanos.length - 1))];
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.BankCardsApplication;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.service.TransferEngine;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Пропускная способность переводов на реальной БД: прежний путь (две загрузки карт, проверки в Java, два save)
+// против TransferEngine (два условных UPDATE в порядке id в одной транзакции). Встречные переводы между
+// несколькими картами из многих потоков, замкнутый цикл. Кроме переводов в секунду печатается расхождение суммы
+// балансов: прежний путь теряет обновления под конкуренцией, TransferEngine — нет.
+// Это не JMH: переводы идут через бины приложения, контекст поднимается один раз на оба пути.
+//
+// Запуск: mvn test-compile, затем main() этого класса с тестовым classpath (БД из application.yml):
+//   -Dbench.paths=legacy,engine -Dbench.threads=16 -Dbench.cards=4 -Dbench.warmup-seconds=5 -Dbench.seconds=20
+public class TransferThroughputBenchmark {
+
+    private static final double INITIAL_BALANCE = 1_000_000.0;
+
+    public static void main(String[] args) throws Exception {
+        String[] paths = System.getProperty("bench.paths", "legacy,engine").split(",");
+        int threads = Integer.getInteger("bench.threads", 16);
+        int cards = Integer.getInteger("bench.cards", 4);
+        Duration warmup = Duration.ofSeconds(Long.getLong("bench.warmup-seconds", 5));
+        Duration measure = Duration.ofSeconds(Long.getLong("bench.seconds", 20));
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BankCardsApplication.class)
+                .properties("server.port=0")
+                .run(args)) {
+            UserRepository userRepository = context.getBean(UserRepository.class);
+            CardRepository cardRepository = context.getBean(CardRepository.class);
+            TransferEngine transferEngine = context.getBean(TransferEngine.class);
+
+            System.out.printf("%-8s %12s %10s %8s %14s%n", "path", "transfers/s", "rejected", "errors", "balance drift");
+            for (String path : paths) {
+                Transfer transfer = switch (path.trim()) {
+                    case "legacy" -> (ownerId, from, to, amount) -> legacyTransfer(cardRepository, ownerId, from, to, amount);
+                    case "engine" -> transferEngine::transfer;
+                    default -> throw new IllegalArgumentException("Unknown path: " + path);
+                };
+                User owner = saveOwner(userRepository);
+                List<Long> cardIds = saveCards(cardRepository, owner, cards);
+                try {
+                    run(transfer, owner.getId(), cardIds, threads, warmup);
+                    Result result = run(transfer, owner.getId(), cardIds, threads, measure);
+                    double total = 0;
+                    for (Long id : cardIds) {
+                        total += cardRepository.findById(id).orElseThrow().getBalance();
+                    }
+                    System.out.printf("%-8s %12.0f %10d %8d %14.2f%n", path.trim(),
+                            result.completed / (measure.toNanos() / 1e9), result.rejected, result.errors,
+                            total - cards * INITIAL_BALANCE);
+                } finally {
+                    cardRepository.deleteAllById(cardIds);
+                    userRepository.delete(owner);
+                }
+            }
+        }
+    }
+
+    // Перевод в том виде, в каком он был до TransferEngine: без транзакции и блокировок,
+    // проверки владельца и баланса — по загруженным сущностям
+    private static void legacyTransfer(CardRepository cardRepository, Long ownerId, Long fromCardId, Long toCardId,
+                                       Double amount) {
+        Card fromCard = cardRepository.findById(fromCardId)
+                .orElseThrow(() -> new RuntimeException("Source card not found"));
+        Card toCard = cardRepository.findById(toCardId)
+                .orElseThrow(() -> new RuntimeException("Destination card not found"));
+        if (!fromCard.getOwner().getId().equals(ownerId) || !toCard.getOwner().getId().equals(ownerId)) {
+            throw new RuntimeException("Access denied");
+        }
+        if (fromCard.getBalance() < amount) {
+            throw new RuntimeException("Insufficient balance");
+        }
+        fromCard.setBalance(fromCard.getBalance() - amount);
+        toCard.setBalance(toCard.getBalance() + amount);
+        cardRepository.save(fromCard);
+        cardRepository.save(toCard);
+    }
+
+    private static Result run(Transfer transfer, Long ownerId, List<Long> cardIds, int threads, Duration duration)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        AtomicLong completed = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int cards = cardIds.size();
+                try {
+                    while (System.nanoTime() < deadline) {
+                        int from = random.nextInt(cards);
+                        int to = (from + 1 + random.nextInt(cards - 1)) % cards;
+                        try {
+                            transfer.run(ownerId, cardIds.get(from), cardIds.get(to), (double) (1 + random.nextInt(50)));
+                            completed.incrementAndGet();
+                        } catch (RuntimeException e) {
+                            if ("Insufficient balance".equals(e.getMessage())) {
+                                rejected.incrementAndGet();
+                            } else {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        Result result = new Result();
+        result.completed = completed.get();
+        result.rejected = rejected.get();
+        result.errors = errors.get();
+        return result;
+    }
+
+    private static User saveOwner(UserRepository userRepository) {
+        User owner = new User();
+        owner.setUsername("bench-transfer-" + UUID.randomUUID());
+        owner.setPassword("n/a");
+        owner.setRole("USER");
+        return userRepository.save(owner);
+    }
+
+    private static List<Long> saveCards(CardRepository cardRepository, User owner, int count) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Card card = new Card();
+            card.setCardNumber("bench-transfer-" + UUID.randomUUID());
+            card.setOwner(owner);
+            card.setExpiryDate(LocalDate.now().plusYears(3));
+            card.setStatus(CardStatus.ACTIVE);
+            card.setBalance(INITIAL_BALANCE);
+            ids.add(cardRepository.save(card).getId());
+        }
+        return ids;
+    }
+
+    @FunctionalInterface
+    private interface Transfer {
+        void run(Long ownerId, Long fromCardId, Long toCardId, Double amount);
+    }
+
+    private static final class Result {
+        long completed;
+        long rejected;
+        long errors;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.service.UsernameIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Поиск подстроки в usernames для админки:
+// - containsScan: проход по всем именам, как LIKE '%term%' без индекса (только сравнение, без ввода-вывода);
+// - trigramIndex: UsernameIndex.search.
+// Термы: 3 символа (одна триграмма, сотни совпадений) и 6 символов (пересечение списков, единицы совпадений).
+// Запуск: mvn test-compile, затем main() этого класса с тестовым classpath.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class UsernameSearchBenchmark {
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789";
+
+    @Param({"5000000"})
+    private int users;
+
+    @Param({"3", "6"})
+    private int termLength;
+
+    private final UsernameIndex index = new UsernameIndex(null, null, 0);
+    private String[] usernames;
+    private String term;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        usernames = new String[users];
+        char[] name = new char[12];
+        for (int i = 0; i < users; i++) {
+            int length = 6 + random.nextInt(7);
+            for (int c = 0; c < length; c++) {
+                name[c] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            }
+            usernames[i] = new String(name, 0, length);
+            index.add(i + 1, usernames[i]);
+        }
+        ReflectionTestUtils.setField(index, "ready", true);
+        term = usernames[users / 2].substring(0, termLength);
+    }
+
+    @Benchmark
+    public void containsScan(Blackhole bh) {
+        int matches = 0;
+        for (String username : usernames) {
+            if (username.contains(term)) {
+                matches++;
+            }
+        }
+        bh.consume(matches);
+    }
+
+    @Benchmark
+    public void trigramIndex(Blackhole bh) {
+        bh.consume(index.search(term).length);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(UsernameSearchBenchmark.class.getSimpleName()).build()).run();
+    }
+}
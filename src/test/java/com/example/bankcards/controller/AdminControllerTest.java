@@ -1,15 +1,23 @@
 package com.example.bankcards.controller;
 
 
+import com.example.bankcards.dto.BulkCardResultDTO;
 import com.example.bankcards.dto.CardCreateDTO;
 import com.example.bankcards.dto.CardDTO;
 import com.example.bankcards.dto.PasswordUpdateDTO;
 import com.example.bankcards.dto.RoleUpdateDTO;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.CustomUserDetailsService;
 import com.example.bankcards.security.JwtAuthenticationFilter;
+import com.example.bankcards.security.TokenVersionRegistry;
+import com.example.bankcards.security.UserPrincipal;
+import com.example.bankcards.service.CardImportService;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.ExportService;
+import com.example.bankcards.service.UsernameIndex;
 import com.example.bankcards.util.JwtUtil;
+import com.example.bankcards.util.KeysetCursor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -21,18 +29,22 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.MediaType;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -43,6 +55,7 @@ class AdminControllerTest {
 
     @Autowired private MockMvc mockMvc;
     @MockBean private CardService cardService;
+    @MockBean private CardImportService cardImportService;
     @MockBean private PasswordEncoder passwordEncoder;
     @MockBean private UserRepository userRepository;
     @Autowired
@@ -51,12 +64,21 @@ class AdminControllerTest {
     private JwtUtil jwtUtil;
     @MockBean
     private JwtAuthenticationFilter jwtAuthenticationFilter;
+    @MockBean
+    private TokenVersionRegistry tokenVersionRegistry;
+    @MockBean
+    private CustomUserDetailsService userDetailsService;
+    @MockBean
+    private UsernameIndex usernameIndex;
+    @MockBean
+    private ExportService exportService;
+
+    private final UserPrincipal admin = new UserPrincipal(1L, "admin", null, "ADMIN", 0);
 
     @BeforeEach
     void setup() {
         // Устанавливаем mock-аутентификацию с ролью ADMIN
-        List<GrantedAuthority> authorities = List.of(new SimpleGrantedAuthority("ROLE_ADMIN"));
-        Authentication auth = new UsernamePasswordAuthenticationToken("admin", null, authorities);
+        Authentication auth = new UsernamePasswordAuthenticationToken(admin, null, admin.getAuthorities());
         SecurityContext context = SecurityContextHolder.createEmptyContext();
         context.setAuthentication(auth);
         SecurityContextHolder.setContext(context);
@@ -113,12 +135,43 @@ class AdminControllerTest {
                 .andExpect(jsonPath("$.id").value(1));
     }
 
+    @Test
+    void createCards_shouldReturnPerRowResults() throws Exception {
+        CardCreateDTO createDTO = new CardCreateDTO();
+        createDTO.setOwnerUsername("missing");
+
+        BulkCardResultDTO result = new BulkCardResultDTO();
+        result.setRow(1);
+        result.setError("User not found");
+
+        when(cardImportService.importCards(any())).thenReturn(List.of(result));
+
+        mockMvc.perform(post("/api/admin/cards/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(createDTO))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].row").value(1))
+                .andExpect(jsonPath("$[0].error").value("User not found"));
+    }
+
+    @Test
+    void createCardsFromCsv_shouldAcceptCsvStream() throws Exception {
+        when(cardImportService.importCsv(any())).thenReturn(List.of());
+
+        mockMvc.perform(post("/api/admin/cards/bulk")
+                        .contentType("text/csv")
+                        .content("ownerUsername,expiryDate,initialBalance\nregular_user,2028-01-31,100\n"))
+                .andExpect(status().isOk());
+
+        verify(cardImportService).importCsv(any());
+    }
+
     @Test
     void activateCard_shouldReturnOk() throws Exception {
         mockMvc.perform(put("/api/admin/cards/1/activate"))
                 .andExpect(status().isOk());
 
-        verify(cardService).activateCard(1L);
+        verify(cardService).activateCard(admin, 1L);
     }
 
     @Test
@@ -126,7 +179,7 @@ class AdminControllerTest {
         mockMvc.perform(put("/api/admin/cards/1/block"))
                 .andExpect(status().isOk());
 
-        verify(cardService).blockCard(1L);
+        verify(cardService).blockCard(admin, 1L);
     }
 
     @Test
@@ -134,7 +187,7 @@ class AdminControllerTest {
         mockMvc.perform(delete("/api/admin/cards/1"))
                 .andExpect(status().isOk());
 
-        verify(cardService).deleteCard(1L);
+        verify(cardService).deleteCard(admin, 1L);
     }
 
     @Test
@@ -144,7 +197,7 @@ class AdminControllerTest {
 
         Page<CardDTO> page = new PageImpl<>(List.of(cardDTO));
 
-        when(cardService.getAllCards(any())).thenReturn(page);
+        when(cardService.getAllCards(eq(admin), any())).thenReturn(page);
 
         mockMvc.perform(get("/api/admin/cards")
                         .param("page", "0")
@@ -164,20 +217,200 @@ class AdminControllerTest {
 
         when(userRepository.findByUsername("newuser")).thenReturn(Optional.empty());
         when(passwordEncoder.encode("password")).thenReturn("encodedPassword");
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
+            User saved = invocation.getArgument(0);
+            saved.setId(42L);
+            return saved;
+        });
 
         mockMvc.perform(post("/api/admin/users")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(new ObjectMapper().writeValueAsString(user)))
                 .andExpect(status().isOk())
                 .andExpect(content().string("User created"));
+
+        verify(usernameIndex).add(42L, "newuser");
+    }
+
+    @Test
+    void getUsers_shouldAttachCardsFromOneBatchLookup() throws Exception {
+        User bob = new User();
+        bob.setId(5L);
+        bob.setUsername("bob");
+        bob.setRole("USER");
+        CardDTO card = new CardDTO();
+        card.setId(10L);
+
+        when(userRepository.findAll(any(Pageable.class))).thenReturn(new PageImpl<>(List.of(bob)));
+        when(cardService.getCardsByOwners(Map.of(5L, "bob"))).thenReturn(Map.of(5L, List.of(card)));
+
+        mockMvc.perform(get("/api/admin/users"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].cards[0].id").value(10))
+                .andExpect(jsonPath("$.content[0].cardCount").doesNotExist());
+
+        verify(cardService, never()).countCardsByOwners(any());
+    }
+
+    @Test
+    void getUsers_countsOnly_shouldReturnCardCounts() throws Exception {
+        User bob = new User();
+        bob.setId(5L);
+        bob.setUsername("bob");
+        User alice = new User();
+        alice.setId(6L);
+        alice.setUsername("alice");
+
+        when(userRepository.findAll(any(Pageable.class))).thenReturn(new PageImpl<>(List.of(bob, alice)));
+        when(cardService.countCardsByOwners(Set.of(5L, 6L))).thenReturn(Map.of(5L, 3L));
+
+        mockMvc.perform(get("/api/admin/users").param("countsOnly", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].cardCount").value(3))
+                .andExpect(jsonPath("$.content[1].cardCount").value(0))
+                .andExpect(jsonPath("$.content[0].cards").doesNotExist());
+
+        verify(cardService, never()).getCardsByOwners(any());
+    }
+
+    @Test
+    void getUsers_withUsernameFilter_shouldResolveIndexMatchesById() throws Exception {
+        User bob = new User();
+        bob.setId(5L);
+        bob.setUsername("bobby");
+
+        when(usernameIndex.search("bob")).thenReturn(new long[]{3L, 5L, 9L});
+        when(userRepository.findByIdInOrderById(List.of(5L))).thenReturn(List.of(bob));
+
+        mockMvc.perform(get("/api/admin/users")
+                        .param("username", "bob")
+                        .param("page", "1")
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].username").value("bobby"))
+                .andExpect(jsonPath("$.totalElements").value(3));
+
+        verify(userRepository, never()).findByUsernameContaining(any(), any());
+    }
+
+    @Test
+    void getUsers_withShortFilter_shouldFallBackToDatabase() throws Exception {
+        when(usernameIndex.search("b")).thenReturn(null);
+        when(userRepository.findByUsernameContaining(eq("b"), any())).thenReturn(new PageImpl<>(List.of()));
+
+        mockMvc.perform(get("/api/admin/users").param("username", "b"))
+                .andExpect(status().isOk());
+
+        verify(userRepository, never()).findByIdInOrderById(any());
+    }
+
+    @Test
+    void scrollUsers_shouldReturnCursorAfterLastRowAndSkipCount() throws Exception {
+        User bob = new User();
+        bob.setId(5L);
+        bob.setUsername("bob");
+        User carol = new User();
+        carol.setId(6L);
+        carol.setUsername("carol");
+
+        // size=1: запрашивается на строку больше, чтобы узнать о следующей странице
+        when(userRepository.findAfterUsername("alice", PageRequest.of(0, 2))).thenReturn(List.of(bob, carol));
+
+        mockMvc.perform(get("/api/admin/users/scroll")
+                        .param("sort", "username")
+                        .param("size", "1")
+                        .param("cursor", KeysetCursor.encode("username", "alice", 4L)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(1))
+                .andExpect(jsonPath("$.content[0].username").value("bob"))
+                .andExpect(jsonPath("$.next").value(KeysetCursor.encode("username", "bob", 5L)))
+                .andExpect(jsonPath("$.total").doesNotExist());
+
+        verify(userRepository, never()).count();
+    }
+
+    @Test
+    void scrollUsers_shouldRejectCursorOfAnotherSort() throws Exception {
+        mockMvc.perform(get("/api/admin/users/scroll")
+                        .param("sort", "username")
+                        .param("cursor", KeysetCursor.encode("id", "", 4L)))
+                .andExpect(status().isBadRequest());
     }
 
     @Test
     void deleteUser_shouldReturnOk() throws Exception {
+        when(userRepository.findUsernameById(1L)).thenReturn(Optional.of("bob"));
+
         mockMvc.perform(delete("/api/admin/users/1"))
                 .andExpect(status().isOk());
 
-        verify(userRepository).deleteById(1L);
+        verify(cardService).deleteUserWithCards(1L);
+        verify(userDetailsService).evict("bob");
+        verify(usernameIndex).remove(1L);
+        verify(tokenVersionRegistry).invalidate(1L);
     }
-}
 
+    @Test
+    void updateUserPassword_shouldRevokeIssuedTokens() throws Exception {
+        PasswordUpdateDTO dto = new PasswordUpdateDTO();
+        dto.setPassword("newPass123");
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("bob");
+
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(passwordEncoder.encode("newPass123")).thenReturn("encoded");
+
+        mockMvc.perform(put("/api/admin/users/1/password")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(dto)))
+                .andExpect(status().isOk());
+
+        verify(tokenVersionRegistry).bump(1L);
+    }
+
+    @Test
+    void updateUserRole_shouldRevokeIssuedTokens() throws Exception {
+        RoleUpdateDTO dto = new RoleUpdateDTO();
+        dto.setRole("ADMIN");
+        User user = new User();
+        user.setId(1L);
+        user.setRole("USER");
+
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+
+        mockMvc.perform(put("/api/admin/users/1/role")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(dto)))
+                .andExpect(status().isOk());
+
+        verify(tokenVersionRegistry).bump(1L);
+    }
+
+    @Test
+    void exportCards_shouldStreamRequestedFormat() throws Exception {
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            out.write("id,maskedCardNumber\n1,**** **** **** 1234\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(exportService).exportCards(eq(ExportService.Format.CSV), any(OutputStream.class));
+
+        MvcResult result = mockMvc.perform(get("/api/admin/cards/export").param("format", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv;charset=UTF-8"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"cards.csv\""))
+                .andExpect(content().string("id,maskedCardNumber\n1,**** **** **** 1234\n"));
+    }
+
+    @Test
+    void exportUsers_shouldRejectUnknownFormat() throws Exception {
+        mockMvc.perform(get("/api/admin/users/export").param("format", "xml"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(exportService);
+    }
+}
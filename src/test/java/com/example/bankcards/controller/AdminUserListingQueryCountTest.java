@@ -0,0 +1,109 @@
+package com.example.bankcards.controller;
+
+import com.example.bankcards.dto.UserDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserPrincipal;
+import com.example.bankcards.service.UsernameIndex;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Число SQL-запросов на страницу пользователей в админке не зависит от числа пользователей и карт:
+// страница users (совпадения по UsernameIndex, строки по id IN (...)) + один запрос карт (или количеств) по owner_id IN (...)
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class AdminUserListingQueryCountTest {
+
+    private static final int USERS = 5;
+    private static final int CARDS_PER_USER = 3;
+
+    @Autowired
+    private AdminController adminController;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private UsernameIndex usernameIndex;
+
+    private final String prefix = "listing-" + UUID.randomUUID() + "-";
+    private final List<User> users = new ArrayList<>();
+    private final List<Long> cardIds = new ArrayList<>();
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        for (int u = 0; u < USERS; u++) {
+            User user = new User();
+            user.setUsername(prefix + u);
+            user.setPassword("n/a");
+            user.setRole("USER");
+            user = userRepository.save(user);
+            // Пользователи создаются мимо контроллеров — в индекс поиска их добавляем сами
+            usernameIndex.add(user.getId(), user.getUsername());
+            users.add(user);
+            for (int c = 0; c < CARDS_PER_USER; c++) {
+                Card card = new Card();
+                card.setCardNumber("listing-" + UUID.randomUUID());
+                card.setLast4(String.format("%04d", c));
+                card.setOwner(user);
+                card.setExpiryDate(LocalDate.now().plusYears(3));
+                card.setStatus(CardStatus.ACTIVE);
+                card.setBalance(10.0);
+                cardIds.add(cardRepository.save(card).getId());
+            }
+        }
+        UserPrincipal admin = new UserPrincipal(1L, "admin", null, "ADMIN", 0);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(admin, null, admin.getAuthorities()));
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        cardRepository.deleteAllById(cardIds);
+        userRepository.deleteAll(users);
+        users.forEach(user -> usernameIndex.remove(user.getId()));
+    }
+
+    @Test
+    void getUsers_shouldUseTwoStatements() {
+        Page<UserDTO> page = adminController.getUsers(prefix, false, PageRequest.of(0, 20)).getBody();
+
+        assertEquals(USERS, page.getNumberOfElements());
+        page.forEach(user -> assertEquals(CARDS_PER_USER, user.getCards().size()));
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void getUsers_countsOnly_shouldUseTwoStatements() {
+        Page<UserDTO> page = adminController.getUsers(prefix, true, PageRequest.of(0, 20)).getBody();
+
+        assertEquals(USERS, page.getNumberOfElements());
+        page.forEach(user -> assertEquals((long) CARDS_PER_USER, user.getCardCount()));
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+}
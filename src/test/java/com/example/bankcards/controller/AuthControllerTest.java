@@ -2,8 +2,13 @@ package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.UserDTO;
 import com.example.bankcards.entity.User;
+import com.example.bankcards.exception.ServiceUnavailableException;
 import com.example.bankcards.repository.UserRepository;
 import com.example.bankcards.security.CustomUserDetailsService;
+import com.example.bankcards.security.PasswordRehashService;
+import com.example.bankcards.security.TokenVersionRegistry;
+import com.example.bankcards.security.UserPrincipal;
+import com.example.bankcards.service.UsernameIndex;
 import com.example.bankcards.util.JwtUtil;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -16,6 +21,7 @@ import org.springframework.http.MediaType;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.web.servlet.MockMvc;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -40,6 +46,12 @@ class AuthControllerTest {
     private ObjectMapper objectMapper;
     @MockBean
     private CustomUserDetailsService userDetailsService;
+    @MockBean
+    private TokenVersionRegistry tokenVersionRegistry;
+    @MockBean
+    private PasswordRehashService passwordRehashService;
+    @MockBean
+    private UsernameIndex usernameIndex;
 
     @Test
     void register_shouldReturnToken() throws Exception {
@@ -48,7 +60,13 @@ class AuthControllerTest {
         user.setPassword("123");
 
         when(passwordEncoder.encode("123")).thenReturn("encoded123");
-        when(jwtUtil.generateToken("test")).thenReturn("token");
+        when(jwtUtil.generateToken(argThat((UserPrincipal p) -> "test".equals(p.getUsername())))).thenReturn("token");
+        // Как persist: id проставляется в сохраняемый объект
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
+            User saved = invocation.getArgument(0);
+            saved.setId(42L);
+            return saved;
+        });
 
         mockMvc.perform(post("/api/auth/register")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -57,6 +75,7 @@ class AuthControllerTest {
                 .andExpect(content().string("token"));
 
         verify(userRepository).save(any(User.class));
+        verify(usernameIndex).add(42L, "test");
     }
 
     @Test
@@ -65,7 +84,10 @@ class AuthControllerTest {
         user.setUsername("test");
         user.setPassword("123");
 
-        when(jwtUtil.generateToken("test")).thenReturn("token");
+        UserPrincipal principal = new UserPrincipal(1L, "test", "encoded123", "USER", 0);
+        when(authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("test", "123")))
+                .thenReturn(new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+        when(jwtUtil.generateToken(principal)).thenReturn("token");
 
         mockMvc.perform(post("/api/auth/login")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -74,6 +96,7 @@ class AuthControllerTest {
                 .andExpect(content().string("token"));
 
         verify(authenticationManager).authenticate(new UsernamePasswordAuthenticationToken("test", "123"));
+        verify(passwordRehashService).upgradeIfNeeded(principal, "123");
     }
 
     @Test
@@ -122,4 +145,37 @@ class AuthControllerTest {
                         .content(objectMapper.writeValueAsString(user)))
                 .andExpect(status().isUnauthorized());
     }
+
+    @Test
+    @DisplayName("Login returns 503 with Retry-After when password hashing is overloaded")
+    void login_shouldReturn503_whenPasswordEncoderOverloaded() throws Exception {
+        User user = new User();
+        user.setUsername("test");
+        user.setPassword("123");
+
+        doThrow(new ServiceUnavailableException("Authentication service is overloaded, retry later", 1))
+                .when(authenticationManager).authenticate(new UsernamePasswordAuthenticationToken("test", "123"));
+
+        mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(user)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+    }
+
+    @Test
+    @DisplayName("Logout revokes all tokens of the current user")
+    void logout_shouldBumpTokenVersion() throws Exception {
+        UserPrincipal principal = new UserPrincipal(1L, "test", null, "USER", 0);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+        try {
+            mockMvc.perform(post("/api/auth/logout"))
+                    .andExpect(status().isOk());
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+
+        verify(tokenVersionRegistry).bump(1L);
+    }
 }
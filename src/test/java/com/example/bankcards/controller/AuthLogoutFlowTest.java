@@ -0,0 +1,98 @@
+package com.example.bankcards.controller;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Выход и повторный вход через настоящую цепочку фильтров, кэш пользователей и TokenVersionRegistry:
+// токен после повторного входа несёт новую версию, а не закэшированную до выхода
+@SpringBootTest
+@AutoConfigureMockMvc
+class AuthLogoutFlowTest {
+
+    private static final String PASSWORD = "secret-123";
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setUsername("logout-" + UUID.randomUUID());
+        user.setPassword(passwordEncoder.encode(PASSWORD));
+        user.setRole("USER");
+        user = userRepository.save(user);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        userRepository.delete(user);
+    }
+
+    @Test
+    void loginAfterLogout_shouldIssueAcceptedToken() throws Exception {
+        // Первый вход кладёт пользователя в кэш CustomUserDetailsService
+        String before = login();
+        mockMvc.perform(get("/api/user/cards").header("Authorization", "Bearer " + before))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/api/auth/logout").header("Authorization", "Bearer " + before))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/user/cards").header("Authorization", "Bearer " + before))
+                .andExpect(status().is4xxClientError());
+
+        String after = login();
+        mockMvc.perform(get("/api/user/cards").header("Authorization", "Bearer " + after))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void saveOfStaleUser_shouldKeepBumpedTokenVersion() throws Exception {
+        // Пользователь прочитан до выхода (как в AdminController.updateUserPassword) и сохраняется после него
+        User stale = userRepository.findById(user.getId()).orElseThrow();
+        String before = login();
+        mockMvc.perform(post("/api/auth/logout").header("Authorization", "Bearer " + before))
+                .andExpect(status().isOk());
+
+        stale.setPassword(passwordEncoder.encode(PASSWORD));
+        userRepository.save(stale);
+
+        assertEquals(1, userRepository.findById(user.getId()).orElseThrow().getTokenVersion());
+        mockMvc.perform(get("/api/user/cards").header("Authorization", "Bearer " + before))
+                .andExpect(status().is4xxClientError());
+    }
+
+    private String login() throws Exception {
+        return mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(
+                                Map.of("username", user.getUsername(), "password", PASSWORD))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+}
@@ -4,10 +4,13 @@ import com.example.bankcards.dto.CardDTO;
 import com.example.bankcards.dto.TransferRequestDTO;
 import com.example.bankcards.exception.ResourceNotFoundException;
 import com.example.bankcards.security.JwtAuthenticationFilter;
+import com.example.bankcards.security.UserPrincipal;
 import com.example.bankcards.service.CardService;
 import com.example.bankcards.util.JwtUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,8 +19,12 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.List;
@@ -42,6 +49,18 @@ class CardControllerTest {
     @MockBean
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    private final UserPrincipal principal = new UserPrincipal(7L, "user", null, "USER", 0);
+
+    @BeforeEach
+    void setUp() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
 
 
     @Test
@@ -53,7 +72,7 @@ class CardControllerTest {
 
         Page<CardDTO> page = new PageImpl<>(List.of(dto));
 
-        when(cardService.getUserCardsBySearch(eq("5678"), any())).thenReturn(page);
+        when(cardService.getUserCardsBySearch(eq(principal), eq("5678"), any())).thenReturn(page);
 
         mockMvc.perform(get("/api/user/cards")
                         .param("search", "5678")
@@ -64,27 +83,40 @@ class CardControllerTest {
     }
 
     @Test
-    @DisplayName("requestBlockCard blocks user-owned card")
-    void requestBlockCard_blocksUserCard() throws Exception {
-        CardDTO card = new CardDTO();
-        card.setId(1L);
+    @DisplayName("getUserCards with slice=true returns a slice without totals")
+    void getUserCards_withSliceParam_skipsTotals() throws Exception {
+        CardDTO dto = new CardDTO();
+        dto.setId(1L);
+        Pageable firstPage = PageRequest.of(0, 1);
+
+        when(cardService.getUserCardsSlice(eq(principal), any())).thenReturn(new SliceImpl<>(List.of(dto), firstPage, true));
 
-        Page<CardDTO> page = new PageImpl<>(List.of(card));
+        mockMvc.perform(get("/api/user/cards")
+                        .param("slice", "true")
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(1))
+                .andExpect(jsonPath("$.last").value(false))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
 
-        when(cardService.getUserCards(any())).thenReturn(page);
+        verify(cardService, never()).getUserCards(any(), any());
+    }
 
+    @Test
+    @DisplayName("requestBlockCard blocks user-owned card")
+    void requestBlockCard_blocksUserCard() throws Exception {
         mockMvc.perform(post("/api/cards/1/block"))
                 .andExpect(status().isOk());
 
-        verify(cardService).blockCard(1L);
+        verify(cardService).blockCard(principal, 1L);
+        verify(cardService, never()).getUserCards(any(), any());
     }
 
     @Test
     @DisplayName("requestBlockCard throws error if card not found or not owned")
     void requestBlockCard_throwsIfCardNotFoundOrNotOwned() throws Exception {
         doThrow(new ResourceNotFoundException("Card not found or not owned"))
-                .when(cardService).blockCard(99L);
-        when(cardService.getUserCards(any())).thenReturn(new PageImpl<>(List.of()));
+                .when(cardService).blockCard(principal, 99L);
 
         mockMvc.perform(post("/api/cards/99/block"))
                 .andExpect(status().isNotFound());
@@ -100,7 +132,7 @@ class CardControllerTest {
         dto.setMaskedCardNumber("**** **** **** 1111");
         Page<CardDTO> page = new PageImpl<>(List.of(dto));
 
-        when(cardService.getUserCardsBySearch(any(Pageable.class))).thenReturn(page);
+        when(cardService.getUserCardsBySearch(eq(principal), any(Pageable.class))).thenReturn(page);
 
         mockMvc.perform(get("/api/cards/search")
                         .param("page", "0")
@@ -123,7 +155,23 @@ class CardControllerTest {
                         .content(new ObjectMapper().writeValueAsString(dto)))
                 .andExpect(status().isOk());
 
-        verify(cardService).transfer(1L, 2L, 50.0);
+        verify(cardService).transfer(principal, 1L, 2L, 50.0, null);
+    }
+
+    @Test
+    void transfer_shouldPassIdempotencyKey() throws Exception {
+        TransferRequestDTO dto = new TransferRequestDTO();
+        dto.setFromCardId(1L);
+        dto.setToCardId(2L);
+        dto.setAmount(50.0);
+
+        mockMvc.perform(post("/api/user/transfer")
+                        .header("Idempotency-Key", "3f2c9a")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(dto)))
+                .andExpect(status().isOk());
+
+        verify(cardService).transfer(principal, 1L, 2L, 50.0, "3f2c9a");
     }
 
 
@@ -131,9 +179,8 @@ class CardControllerTest {
     @Test
     @DisplayName("Request block card with non-existent card returns 404")
     void requestBlockCard_shouldReturnNotFound_whenCardNotOwned() throws Exception {
-        Page<CardDTO> cardsPage = new PageImpl<>(List.of()); // Пустой список
-
-        when(cardService.getUserCards(any())).thenReturn(cardsPage);
+        doThrow(new ResourceNotFoundException("Card not found or not owned"))
+                .when(cardService).blockCard(principal, 99L);
 
         mockMvc.perform(post("/api/cards/99/block"))
                 .andExpect(status().isNotFound());
@@ -142,17 +189,27 @@ class CardControllerTest {
     @Test
     @DisplayName("Get card balance returns correct balance")
     void getCardBalance_shouldReturnBalance() throws Exception {
-        when(cardService.getCardBalance(1L)).thenReturn(123.45);
+        when(cardService.getCardBalance(principal, 1L)).thenReturn(123.45);
 
         mockMvc.perform(get("/api/cards/1/balance"))
                 .andExpect(status().isOk())
                 .andExpect(content().string("123.45"));
     }
 
+    @Test
+    @DisplayName("Reveal card number returns full number")
+    void revealCardNumber_shouldReturnNumber() throws Exception {
+        when(cardService.revealCardNumber(principal, 1L)).thenReturn("4111111111111111");
+
+        mockMvc.perform(get("/api/cards/1/number"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("4111111111111111"));
+    }
+
     @Test
     @DisplayName("Get card balance when card not found returns 404")
     void getCardBalance_shouldReturnNotFound_whenCardMissing() throws Exception {
-        when(cardService.getCardBalance(999L)).thenThrow(new ResourceNotFoundException("Card not found"));
+        when(cardService.getCardBalance(principal, 999L)).thenThrow(new ResourceNotFoundException("Card not found"));
 
         mockMvc.perform(get("/api/cards/999/balance"))
                 .andExpect(status().isNotFound());
@@ -0,0 +1,260 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CardStatus;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.ClassUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Планы запросов CardRepository/UserRepository на заполненных таблицах: ни один не должен читать cards или users
+// последовательным сканированием. Каждый метод вызывается как есть, SQL и значения параметров перехватываются
+// на уровне JDBC и повторяются под EXPLAIN — проверяется ровно то, что отправляет Hibernate.
+// Модифицирующие запросы выполняются в откатываемой транзакции.
+@SpringBootTest
+@Import(QueryPlanTest.RecordingConfig.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryPlanTest {
+
+    private static final int USERS = 2000;
+    private static final int CARDS_PER_USER = 25;
+    private static final PageRequest PAGE_BY_ID = PageRequest.of(0, 20, Sort.by("id"));
+
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private StatementRecorder recorder;
+
+    private final String prefix = "plan-" + UUID.randomUUID() + "-";
+    private long ownerId;
+    private long cardId;
+    private String username;
+    private String panHmac;
+    private String last4Hmac;
+
+    @BeforeAll
+    void seed() {
+        jdbcTemplate.update("INSERT INTO users (username, password, role) "
+                + "SELECT ? || g, 'n/a', 'USER' FROM generate_series(1, ?) g", prefix, USERS);
+        // Статусы как в проде: большинство карт активны
+        jdbcTemplate.update("INSERT INTO cards (id, card_number, owner_id, expiry_date, status, balance, pan_hmac, last4_hmac, last4) "
+                + "SELECT nextval('card_id_seq'), u.username || '-' || g, u.id, CURRENT_DATE + (g * 37 + u.id::int) % 1500, "
+                + "CASE WHEN g % 10 = 0 THEN 'BLOCKED' WHEN g % 10 = 1 THEN 'EXPIRED' ELSE 'ACTIVE' END, 100, "
+                + "md5(u.username || '-' || g), md5('last4-' || u.id || '-' || g % 7), lpad((g % 10000)::text, 4, '0') "
+                + "FROM users u CROSS JOIN generate_series(1, ?) g WHERE u.username LIKE ?", CARDS_PER_USER, prefix + "%");
+        jdbcTemplate.execute("ANALYZE users");
+        jdbcTemplate.execute("ANALYZE cards");
+
+        username = prefix + (USERS / 2);
+        ownerId = jdbcTemplate.queryForObject("SELECT id FROM users WHERE username = ?", Long.class, username);
+        Map<String, Object> card = jdbcTemplate.queryForMap(
+                "SELECT id, pan_hmac, last4_hmac FROM cards WHERE owner_id = ? ORDER BY id LIMIT 1", ownerId);
+        cardId = ((Number) card.get("id")).longValue();
+        panHmac = (String) card.get("pan_hmac");
+        last4Hmac = (String) card.get("last4_hmac");
+    }
+
+    @AfterAll
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM cards WHERE owner_id IN (SELECT id FROM users WHERE username LIKE ?)", prefix + "%");
+        jdbcTemplate.update("DELETE FROM users WHERE username LIKE ?", prefix + "%");
+    }
+
+    @Test
+    void cardQueries_shouldNotScanTables() {
+        Map<String, Runnable> queries = new LinkedHashMap<>();
+        queries.put("findSummariesByOwnerId", () -> cardRepository.findSummariesByOwnerId(ownerId, PAGE_BY_ID));
+        queries.put("findSummariesByOwnerIdAndPanHmac",
+                () -> cardRepository.findSummariesByOwnerIdAndPanHmac(ownerId, panHmac, PAGE_BY_ID));
+        queries.put("findSummariesByOwnerIdAndLast4Hmac",
+                () -> cardRepository.findSummariesByOwnerIdAndLast4Hmac(ownerId, last4Hmac, PAGE_BY_ID));
+        queries.put("findSummariesByOwnerIdAndStatus(ACTIVE)",
+                () -> cardRepository.findSummariesByOwnerIdAndStatus(ownerId, CardStatus.ACTIVE, PAGE_BY_ID));
+        queries.put("findSummariesByOwnerIdAndStatus(BLOCKED)",
+                () -> cardRepository.findSummariesByOwnerIdAndStatus(ownerId, CardStatus.BLOCKED, PAGE_BY_ID));
+        queries.put("countByOwnerId", () -> cardRepository.countByOwnerId(ownerId));
+        queries.put("countByOwnerIdAndPanHmac", () -> cardRepository.countByOwnerIdAndPanHmac(ownerId, panHmac));
+        queries.put("countByOwnerIdAndLast4Hmac", () -> cardRepository.countByOwnerIdAndLast4Hmac(ownerId, last4Hmac));
+        queries.put("countByOwnerIdAndStatus", () -> cardRepository.countByOwnerIdAndStatus(ownerId, CardStatus.ACTIVE));
+        queries.put("findAllWithOwner",
+                () -> cardRepository.findAllWithOwner(PageRequest.of(0, 20, Sort.by(Sort.Direction.DESC, "id"))));
+        queries.put("findWithOwnerAfterId", () -> cardRepository.findWithOwnerAfterId(cardId, PageRequest.of(0, 21)));
+        queries.put("findWithOwnerAfterExpiryDate",
+                () -> cardRepository.findWithOwnerAfterExpiryDate(LocalDate.now(), cardId, PageRequest.of(0, 21)));
+        queries.put("findSummariesByOwnerIdIn", () -> cardRepository.findSummariesByOwnerIdIn(List.of(ownerId, ownerId + 1)));
+        queries.put("countByOwnerIdIn", () -> cardRepository.countByOwnerIdIn(List.of(ownerId, ownerId + 1)));
+        queries.put("findOwnerIdById", () -> cardRepository.findOwnerIdById(cardId));
+        queries.put("updateStatusForOwner", () -> cardRepository.updateStatusForOwner(cardId, ownerId, "BLOCKED"));
+        queries.put("updateStatus", () -> cardRepository.updateStatus(cardId, "BLOCKED"));
+        queries.put("deleteByOwnerIdReturningStatus", () -> cardRepository.deleteByOwnerIdReturningStatus(ownerId));
+        queries.put("lockBalances", () -> cardRepository.lockBalances(List.of(cardId, cardId + 1)));
+        queries.put("setBalance", () -> cardRepository.setBalance(cardId, 1.0));
+        queries.put("debit", () -> cardRepository.debit(cardId, ownerId, 1.0));
+        queries.put("credit", () -> cardRepository.credit(cardId, ownerId, 1.0));
+
+        assertNoSequentialScans(queries);
+    }
+
+    @Test
+    void userQueries_shouldNotScanTables() {
+        Map<String, Runnable> queries = new LinkedHashMap<>();
+        // findByUsernameContaining не проверяется: LIKE '%term%' не может использовать B-tree,
+        // поэтому такие запросы обслуживает UsernameIndex
+        queries.put("findByUsername", () -> userRepository.findByUsername(username));
+        queries.put("existsByUsername", () -> userRepository.existsByUsername(username));
+        queries.put("findByUsernameIn", () -> userRepository.findByUsernameIn(List.of(username, prefix + 1)));
+        queries.put("findByIdInOrderById", () -> userRepository.findByIdInOrderById(List.of(ownerId, ownerId + 1)));
+        queries.put("findAfterId", () -> userRepository.findAfterId(ownerId, PageRequest.of(0, 21)));
+        queries.put("findAfterUsername", () -> userRepository.findAfterUsername(username, PageRequest.of(0, 21)));
+        queries.put("findUsernameById", () -> userRepository.findUsernameById(ownerId));
+        queries.put("updatePasswordIfUnchanged", () -> userRepository.updatePasswordIfUnchanged(ownerId, "n/a", "n/a"));
+
+        assertNoSequentialScans(queries);
+    }
+
+    private void assertNoSequentialScans(Map<String, Runnable> queries) {
+        TransactionTemplate rollbackOnly = new TransactionTemplate(transactionManager);
+        List<String> failures = new ArrayList<>();
+        queries.forEach((name, query) -> {
+            recorder.statements.clear();
+            rollbackOnly.executeWithoutResult(status -> {
+                query.run();
+                status.setRollbackOnly();
+            });
+            List<RecordedStatement> statements = List.copyOf(recorder.statements);
+            if (statements.isEmpty()) {
+                failures.add(name + ": no statements recorded");
+            }
+            for (RecordedStatement statement : statements) {
+                String plan = explain(statement);
+                if (plan.contains("Seq Scan on cards") || plan.contains("Seq Scan on users")) {
+                    failures.add(name + ":\n" + statement.sql() + "\n" + plan);
+                }
+            }
+        });
+        assertTrue(failures.isEmpty(), () -> String.join("\n\n", failures));
+    }
+
+    private String explain(RecordedStatement statement) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement explain = connection.prepareStatement("EXPLAIN " + statement.sql())) {
+            for (Bind bind : statement.binds()) {
+                bind.method().invoke(explain, bind.args());
+            }
+            StringBuilder plan = new StringBuilder();
+            try (ResultSet rs = explain.executeQuery()) {
+                while (rs.next()) {
+                    plan.append(rs.getString(1)).append('\n');
+                }
+            }
+            return plan.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("EXPLAIN failed for " + statement.sql(), e);
+        }
+    }
+
+    @TestConfiguration
+    static class RecordingConfig {
+        @Bean
+        static StatementRecorder statementRecorder() {
+            return new StatementRecorder();
+        }
+    }
+
+    // Оборачивает DataSource: запоминает SQL и вызовы setXxx(index, value, ...) каждого выполненного PreparedStatement
+    static class StatementRecorder implements BeanPostProcessor {
+        final List<RecordedStatement> statements = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof DataSource) {
+                return proxy(bean, (target, method, args) -> {
+                    Object result = invoke(target, method, args);
+                    return result instanceof Connection ? proxy(result, this::connectionCall) : result;
+                });
+            }
+            return bean;
+        }
+
+        private Object connectionCall(Object connection, Method method, Object[] args) throws Throwable {
+            Object result = invoke(connection, method, args);
+            if (method.getName().equals("prepareStatement") && result instanceof PreparedStatement) {
+                String sql = (String) args[0];
+                List<Bind> binds = new ArrayList<>();
+                return proxy(result, (statement, call, callArgs) -> {
+                    String name = call.getName();
+                    if (name.startsWith("set") && callArgs != null && callArgs.length >= 2 && callArgs[0] instanceof Integer) {
+                        binds.add(new Bind(call, callArgs.clone()));
+                    } else if (name.equals("clearParameters")) {
+                        binds.clear();
+                    } else if (name.startsWith("execute")) {
+                        statements.add(new RecordedStatement(sql, List.copyOf(binds)));
+                    }
+                    return invoke(statement, call, callArgs);
+                });
+            }
+            return result;
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private static Object proxy(Object target, TargetHandler handler) {
+            return Proxy.newProxyInstance(target.getClass().getClassLoader(),
+                    ClassUtils.getAllInterfacesForClass(target.getClass()),
+                    (proxy, method, args) -> handler.invoke(target, method, args));
+        }
+    }
+
+    @FunctionalInterface
+    interface TargetHandler {
+        Object invoke(Object target, Method method, Object[] args) throws Throwable;
+    }
+
+    record RecordedStatement(String sql, List<Bind> binds) {
+    }
+
+    record Bind(Method method, Object[] args) {
+    }
+}
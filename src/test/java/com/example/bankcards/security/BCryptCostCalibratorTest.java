@@ -0,0 +1,31 @@
+package com.example.bankcards.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BCryptCostCalibratorTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    void pick_shouldChooseLargestCostWithinTarget() {
+        // cost 10 = 60 мс: 11 = 120, 12 = 240, 13 = 480
+        assertEquals(12, BCryptCostCalibrator.pick(60 * MS, 250 * MS, 10, 14));
+    }
+
+    @Test
+    void pick_shouldRespectBounds() {
+        assertEquals(10, BCryptCostCalibrator.pick(400 * MS, 250 * MS, 10, 14));
+        assertEquals(14, BCryptCostCalibrator.pick(1 * MS, 250 * MS, 10, 14));
+    }
+
+    @Test
+    void calibrate_shouldStayWithinBounds() {
+        int cost = BCryptCostCalibrator.calibrate(Duration.ofMillis(20), 4, 6);
+
+        assertTrue(cost >= 4 && cost <= 6);
+    }
+}
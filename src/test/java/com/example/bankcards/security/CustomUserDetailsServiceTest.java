@@ -0,0 +1,95 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CustomUserDetailsServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CustomUserDetailsService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new CustomUserDetailsService(userRepository, meterRegistry, 100, 10);
+    }
+
+    @Test
+    void loadUserByUsername_shouldQueryDatabaseOnce() {
+        when(userRepository.findByUsername("bob")).thenReturn(Optional.of(user("bob", "hash1", "USER")));
+
+        UserDetails first = service.loadUserByUsername("bob");
+        UserDetails second = service.loadUserByUsername("bob");
+
+        assertEquals("hash1", second.getPassword());
+        assertSame(first, second);
+        verify(userRepository, times(1)).findByUsername("bob");
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "userDetails").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void evict_shouldReloadChangedUser() {
+        when(userRepository.findByUsername("bob"))
+                .thenReturn(Optional.of(user("bob", "hash1", "USER")))
+                .thenReturn(Optional.of(user("bob", "hash2", "ADMIN")));
+        service.loadUserByUsername("bob");
+
+        service.evict("bob");
+        UserDetails reloaded = service.loadUserByUsername("bob");
+
+        assertEquals("hash2", reloaded.getPassword());
+        assertEquals("ROLE_ADMIN", reloaded.getAuthorities().iterator().next().getAuthority());
+    }
+
+    @Test
+    void evict_duringLoad_shouldNotLeaveStaleUserCached() {
+        when(userRepository.findByUsername("bob"))
+                .thenAnswer(invocation -> {
+                    // Пароль сменили, пока шла загрузка старой версии
+                    service.evict("bob");
+                    return Optional.of(user("bob", "hash1", "USER"));
+                })
+                .thenReturn(Optional.of(user("bob", "hash2", "USER")));
+
+        assertEquals("hash1", service.loadUserByUsername("bob").getPassword());
+        assertEquals("hash2", service.loadUserByUsername("bob").getPassword());
+
+        verify(userRepository, times(2)).findByUsername("bob");
+    }
+
+    @Test
+    void loadUserByUsername_shouldNotCacheMissingUser() {
+        when(userRepository.findByUsername("ghost")).thenReturn(Optional.empty());
+
+        assertThrows(UsernameNotFoundException.class, () -> service.loadUserByUsername("ghost"));
+        assertThrows(UsernameNotFoundException.class, () -> service.loadUserByUsername("ghost"));
+
+        verify(userRepository, times(2)).findByUsername("ghost");
+    }
+
+    private static User user(String username, String password, String role) {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername(username);
+        user.setPassword(password);
+        user.setRole(role);
+        return user;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class JwtAuthenticationFilterTest {
+
+    @Mock
+    private JwtUtil jwtUtil;
+    @Mock
+    private TokenVersionRegistry tokenVersionRegistry;
+
+    @InjectMocks
+    private JwtAuthenticationFilter filter;
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void doFilter_shouldAuthenticateFromClaims() throws Exception {
+        when(jwtUtil.parseToken("token")).thenReturn(claims(5L, "ADMIN", 3));
+        when(tokenVersionRegistry.isCurrent(5L, 3)).thenReturn(true);
+
+        filter.doFilter(bearer("token"), new MockHttpServletResponse(), new MockFilterChain());
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        assertNotNull(authentication);
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        assertEquals(5L, principal.getId());
+        assertEquals("admin", authentication.getName());
+        assertEquals("ROLE_ADMIN", authentication.getAuthorities().iterator().next().getAuthority());
+    }
+
+    @Test
+    void doFilter_shouldIgnoreRevokedTokenVersion() throws Exception {
+        when(jwtUtil.parseToken("token")).thenReturn(claims(5L, "ADMIN", 2));
+        when(tokenVersionRegistry.isCurrent(5L, 2)).thenReturn(false);
+
+        filter.doFilter(bearer("token"), new MockHttpServletResponse(), new MockFilterChain());
+
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void doFilter_shouldIgnoreTokenWithoutUserClaims() throws Exception {
+        when(jwtUtil.parseToken("token")).thenReturn(Jwts.claims().setSubject("admin"));
+
+        filter.doFilter(bearer("token"), new MockHttpServletResponse(), new MockFilterChain());
+
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    private static MockHttpServletRequest bearer(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+
+    private static Claims claims(Long userId, String role, int version) {
+        Claims claims = Jwts.claims().setSubject("admin");
+        claims.put(UserPrincipal.CLAIM_USER_ID, userId);
+        claims.put(UserPrincipal.CLAIM_ROLE, role);
+        claims.put(UserPrincipal.CLAIM_TOKEN_VERSION, version);
+        return claims;
+    }
+}
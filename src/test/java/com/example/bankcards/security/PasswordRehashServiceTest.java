@@ -0,0 +1,108 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.exception.ServiceUnavailableException;
+import com.example.bankcards.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PasswordRehashServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private CustomUserDetailsService userDetailsService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private DelegatingPasswordEncoder passwordEncoder;
+    private PasswordRehashService service;
+
+    @BeforeEach
+    void setUp() {
+        passwordEncoder = new DelegatingPasswordEncoder("bcrypt", Map.of("bcrypt", new BCryptPasswordEncoder(5)));
+        passwordEncoder.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder());
+        service = new PasswordRehashService(passwordEncoder, userRepository, userDetailsService, meterRegistry, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void upgradeIfNeeded_shouldRehashLegacyHashInBackground() {
+        String legacy = new BCryptPasswordEncoder(4).encode("secret");
+        when(userRepository.updatePasswordIfUnchanged(eq(1L), eq(legacy), anyString())).thenReturn(1);
+
+        service.upgradeIfNeeded(new UserPrincipal(1L, "bob", legacy, "USER", 0), "secret");
+
+        ArgumentCaptor<String> newHash = ArgumentCaptor.forClass(String.class);
+        verify(userRepository, timeout(5000)).updatePasswordIfUnchanged(eq(1L), eq(legacy), newHash.capture());
+        verify(userDetailsService, timeout(5000)).evict("bob");
+        assertTrue(newHash.getValue().startsWith("{bcrypt}$2a$05$"));
+        assertTrue(passwordEncoder.matches("secret", newHash.getValue()));
+        assertFalse(passwordEncoder.upgradeEncoding(newHash.getValue()));
+    }
+
+    @Test
+    void upgradeIfNeeded_shouldSkipCurrentHash() {
+        String current = passwordEncoder.encode("secret");
+
+        service.upgradeIfNeeded(new UserPrincipal(1L, "bob", current, "USER", 0), "secret");
+
+        assertEquals(0, service.pending());
+        verifyNoInteractions(userRepository, userDetailsService);
+    }
+
+    @Test
+    void upgradeIfNeeded_shouldKeepPasswordChangedConcurrently() {
+        String legacy = new BCryptPasswordEncoder(4).encode("secret");
+        when(userRepository.updatePasswordIfUnchanged(eq(1L), eq(legacy), anyString())).thenReturn(0);
+
+        service.upgradeIfNeeded(new UserPrincipal(1L, "bob", legacy, "USER", 0), "secret");
+
+        verify(userRepository, timeout(5000)).updatePasswordIfUnchanged(eq(1L), eq(legacy), anyString());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.get("password.rehash").tag("outcome", "skipped").counter().count() < 1
+                && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(1.0, meterRegistry.get("password.rehash").tag("outcome", "skipped").counter().count());
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void upgradeIfNeeded_shouldCountOverloadedEncoderAsDropped() {
+        PasswordEncoder overloaded = mock(PasswordEncoder.class);
+        when(overloaded.upgradeEncoding("legacy")).thenReturn(true);
+        when(overloaded.encode("secret")).thenThrow(new ServiceUnavailableException("Password hashing overloaded", 1));
+        service.stop();
+        service = new PasswordRehashService(overloaded, userRepository, userDetailsService, meterRegistry, 10);
+
+        service.upgradeIfNeeded(new UserPrincipal(1L, "bob", "legacy", "USER", 0), "secret");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.get("password.rehash").tag("outcome", "dropped").counter().count() < 1
+                && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(1.0, meterRegistry.get("password.rehash").tag("outcome", "dropped").counter().count());
+        assertEquals(0.0, meterRegistry.get("password.rehash").tag("outcome", "failed").counter().count());
+        verifyNoInteractions(userRepository, userDetailsService);
+    }
+}
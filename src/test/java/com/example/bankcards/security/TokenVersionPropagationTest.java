@@ -0,0 +1,85 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+// Два узла на одной БД: реестр приложения (узел A) и второй экземпляр со своим LISTEN (узел B).
+// bump и invalidate на узле A должны дойти до узла B без перезапуска
+@SpringBootTest
+class TokenVersionPropagationTest {
+
+    @Autowired
+    private TokenVersionRegistry nodeA;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+    @Autowired
+    private UserRepository userRepository;
+
+    private final CustomUserDetailsService nodeBUsers = mock(CustomUserDetailsService.class);
+    private TokenVersionRegistry nodeB;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setUsername("propagation-" + UUID.randomUUID());
+        user.setPassword("n/a");
+        user.setRole("USER");
+        user = userRepository.save(user);
+        nodeB = new TokenVersionRegistry(jdbcTemplate, nodeBUsers, dataSourceProperties, true);
+        nodeB.preload();
+        // Версии загружаются после LISTEN: с этого момента узел B получает уведомления
+        await(() -> nodeB.size() > 0);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        nodeB.stop();
+        userRepository.deleteById(user.getId());
+    }
+
+    @Test
+    void bumpOnOtherNode_shouldRevokeTokensAndEvictCachedUser() {
+        long id = user.getId();
+        assertTrue(nodeB.isCurrent(id, 0));
+
+        nodeA.bump(id);
+
+        await(() -> nodeB.isCurrent(id, 1));
+        assertFalse(nodeB.isCurrent(id, 0));
+        verify(nodeBUsers, timeout(5_000)).evict(user.getUsername());
+
+        nodeA.invalidate(id);
+
+        await(() -> !nodeB.isCurrent(id, 1));
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Condition not met within 5 s");
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.bankcards.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenVersionRegistryTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private CustomUserDetailsService userDetailsService;
+
+    private TokenVersionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        // Без LISTEN: распространение между узлами проверяет TokenVersionPropagationTest на реальной БД
+        registry = new TokenVersionRegistry(jdbcTemplate, userDetailsService, null, false);
+    }
+
+    @Test
+    void isCurrent_shouldAnswerFromPreloadedVersionsWithoutQueries() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (long id = 1; id <= 2000; id++) {
+                when(rs.getLong(1)).thenReturn(id);
+                when(rs.getInt(2)).thenReturn((int) (id % 3));
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+
+        registry.preload();
+
+        assertEquals(2000, registry.size());
+        for (long id = 1; id <= 2000; id++) {
+            assertTrue(registry.isCurrent(id, (int) (id % 3)));
+            assertFalse(registry.isCurrent(id, (int) (id % 3) + 1));
+        }
+        verify(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void isCurrent_shouldLoadMissingUserOnce() {
+        when(jdbcTemplate.queryForList(startsWith("SELECT"), eq(Integer.class), eq(42L))).thenReturn(List.of(2));
+
+        assertTrue(registry.isCurrent(42L, 2));
+        assertTrue(registry.isCurrent(42L, 2));
+
+        verify(jdbcTemplate, times(1)).queryForList(startsWith("SELECT"), eq(Integer.class), eq(42L));
+    }
+
+    @Test
+    void isCurrent_shouldRememberUnknownUserAsRevoked() {
+        when(jdbcTemplate.queryForList(startsWith("SELECT"), eq(Integer.class), eq(42L))).thenReturn(List.of());
+
+        assertFalse(registry.isCurrent(42L, 0));
+        assertFalse(registry.isCurrent(42L, 0));
+
+        verify(jdbcTemplate, times(1)).queryForList(startsWith("SELECT"), eq(Integer.class), eq(42L));
+    }
+
+    @Test
+    void bump_shouldRejectOlderTokens() {
+        stubBump(7L, 1, "bob");
+
+        registry.bump(7L);
+
+        assertFalse(registry.isCurrent(7L, 0));
+        assertTrue(registry.isCurrent(7L, 1));
+    }
+
+    @Test
+    void bump_shouldEvictCachedUserAfterNewVersion() {
+        stubBump(7L, 1, "bob");
+
+        registry.bump(7L);
+
+        // Вход после bump загружает пользователя заново и выдаёт токен с новой версией
+        InOrder inOrder = inOrder(jdbcTemplate, userDetailsService);
+        inOrder.verify(jdbcTemplate).query(contains("UPDATE users"), any(RowMapper.class), eq(7L));
+        inOrder.verify(userDetailsService).evict("bob");
+    }
+
+    @Test
+    void bump_shouldRevokeDeletedUserWithoutEviction() {
+        when(jdbcTemplate.query(contains("UPDATE users"), any(RowMapper.class), eq(7L))).thenReturn(List.of());
+
+        registry.bump(7L);
+
+        assertFalse(registry.isCurrent(7L, 0));
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void invalidate_shouldRejectAllTokens() {
+        stubBump(7L, 1, "bob");
+        registry.bump(7L);
+
+        registry.invalidate(7L);
+
+        assertFalse(registry.isCurrent(7L, 1));
+        assertFalse(registry.isCurrent(7L, TokenVersionRegistry.REVOKED));
+        // Другие узлы узнают об удалении из уведомления
+        verify(jdbcTemplate).queryForList("SELECT pg_notify(?, ?)", TokenVersionRegistry.CHANNEL, "7:-1:");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubBump(long userId, int version, String username) {
+        when(jdbcTemplate.query(contains("UPDATE users"), any(RowMapper.class), eq(userId))).thenAnswer(invocation -> {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getInt(1)).thenReturn(version);
+            when(rs.getString(2)).thenReturn(username);
+            RowMapper<Object> mapper = invocation.getArgument(1);
+            return List.of(mapper.mapRow(rs, 0));
+        });
+    }
+}
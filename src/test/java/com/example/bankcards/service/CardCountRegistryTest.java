@@ -0,0 +1,112 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.OwnerCardCount;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardCountRegistryTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private CardRepository cardRepository;
+
+    private CardCountRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new CardCountRegistry(jdbcTemplate, cardRepository, 1000);
+    }
+
+    @Test
+    void reconcile_shouldReplaceStatusCountersWithDatabaseCounts() throws Exception {
+        registry.cardCreated(1L, CardStatus.EXPIRED);
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString(1)).thenReturn("ACTIVE", "BLOCKED");
+        when(rs.getLong(2)).thenReturn(10L, 2L);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(rs);
+            handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+
+        registry.reconcile();
+
+        assertEquals(10L, registry.countByStatus(CardStatus.ACTIVE));
+        assertEquals(2L, registry.countByStatus(CardStatus.BLOCKED));
+        assertEquals(0L, registry.countByStatus(CardStatus.EXPIRED));
+        assertEquals(12L, registry.total());
+    }
+
+    @Test
+    void countByOwners_shouldLoadMissesOnceAndThenTrackChanges() {
+        when(cardRepository.countByOwnerIdIn(List.of(5L, 6L))).thenReturn(List.of(ownerCount(5L, 3L)));
+
+        assertEquals(Map.of(5L, 3L, 6L, 0L), registry.countByOwners(List.of(5L, 6L)));
+
+        registry.cardCreated(6L, CardStatus.ACTIVE);
+        registry.cardDeleted(5L, CardStatus.ACTIVE);
+
+        assertEquals(Map.of(5L, 2L, 6L, 1L), registry.countByOwners(List.of(5L, 6L)));
+        verify(cardRepository, times(1)).countByOwnerIdIn(any());
+    }
+
+    @Test
+    void statusChanged_shouldMoveCountBetweenStatuses() {
+        registry.cardCreated(1L, CardStatus.ACTIVE);
+
+        registry.statusChanged(CardStatus.ACTIVE, CardStatus.BLOCKED);
+
+        assertEquals(0L, registry.countByStatus(CardStatus.ACTIVE));
+        assertEquals(1L, registry.countByStatus(CardStatus.BLOCKED));
+        assertEquals(1L, registry.total());
+    }
+
+    @Test
+    void changesInsideTransaction_shouldApplyOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            registry.cardCreated(1L, CardStatus.ACTIVE);
+            assertEquals(0L, registry.total());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            assertEquals(1L, registry.total());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static OwnerCardCount ownerCount(Long ownerId, Long cardCount) {
+        return new OwnerCardCount() {
+            @Override
+            public Long getOwnerId() {
+                return ownerId;
+            }
+
+            @Override
+            public Long getCardCount() {
+                return cardCount;
+            }
+        };
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.BulkCardResultDTO;
+import com.example.bankcards.dto.CardCreateDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardImportServiceTest {
+
+    @Mock
+    private CardService cardService;
+
+    @InjectMocks
+    private CardImportService cardImportService;
+
+    @Test
+    void importCsv_shouldParseRowsAndReportInvalidLines() throws Exception {
+        when(cardService.createCards(any())).thenAnswer(i -> {
+            List<CardCreateDTO> chunk = i.getArgument(0);
+            List<BulkCardResultDTO> results = new ArrayList<>();
+            chunk.forEach(dto -> results.add(new BulkCardResultDTO()));
+            return results;
+        });
+        String csv = "ownerUsername,expiryDate,initialBalance\n"
+                + "regular_user,2028-01-31,100\n"
+                + "broken-row\n"
+                + "admin_user,2029-12-31,0\n";
+
+        List<BulkCardResultDTO> results = cardImportService.importCsv(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(3, results.size());
+        assertEquals(2, results.get(0).getRow());
+        assertEquals(3, results.get(1).getRow());
+        assertNotNull(results.get(1).getError());
+        assertEquals(4, results.get(2).getRow());
+        verify(cardService).createCards(argThat(chunk -> chunk.size() == 2
+                && chunk.get(0).getExpiryDate().equals(LocalDate.of(2028, 1, 31))));
+    }
+
+    @Test
+    void importCards_shouldSplitIntoChunks() {
+        List<CardCreateDTO> rows = new ArrayList<>();
+        for (int i = 0; i < CardImportService.CHUNK_SIZE + 1; i++) {
+            rows.add(new CardCreateDTO());
+        }
+        when(cardService.createCards(any())).thenAnswer(i -> {
+            List<CardCreateDTO> chunk = i.getArgument(0);
+            List<BulkCardResultDTO> results = new ArrayList<>();
+            chunk.forEach(dto -> results.add(new BulkCardResultDTO()));
+            return results;
+        });
+
+        List<BulkCardResultDTO> results = cardImportService.importCards(rows);
+
+        assertEquals(CardImportService.CHUNK_SIZE + 1, results.get(results.size() - 1).getRow());
+        verify(cardService, times(2)).createCards(any());
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.CursorPageDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserPrincipal;
+import com.example.bankcards.util.KeysetCursor;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Списки карт читаются проекциями: ни одна сущность Card/User не загружается,
+// на страницу — запрос строк и, где нужно точное общее число, запрос количества
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class CardListingProjectionTest {
+
+    private static final int CARDS = 3;
+
+    @Autowired
+    private CardService cardService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private final List<Long> cardIds = new ArrayList<>();
+    private User owner;
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        owner = new User();
+        owner.setUsername("projection-" + UUID.randomUUID());
+        owner.setPassword("n/a");
+        owner.setRole("USER");
+        owner = userRepository.save(owner);
+        for (int c = 0; c < CARDS; c++) {
+            Card card = new Card();
+            card.setCardNumber("projection-" + UUID.randomUUID());
+            card.setLast4(String.format("%04d", c));
+            card.setOwner(owner);
+            card.setExpiryDate(LocalDate.now().plusYears(3));
+            card.setStatus(CardStatus.ACTIVE);
+            card.setBalance(10.0);
+            cardIds.add(cardRepository.save(card).getId());
+        }
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        cardRepository.deleteAllById(cardIds);
+        userRepository.delete(owner);
+    }
+
+    @Test
+    void getUserCards_shouldNotLoadEntities() {
+        UserPrincipal principal = UserPrincipal.from(owner);
+
+        Page<CardDTO> page = cardService.getUserCards(principal, PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "id")));
+
+        assertEquals(CARDS, page.getTotalElements());
+        assertEquals(cardIds.get(CARDS - 1), page.getContent().get(0).getId());
+        assertEquals("**** **** **** 0002", page.getContent().get(0).getMaskedCardNumber());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void getAllCards_shouldJoinOwnerUsernameWithoutLoadingUsers() {
+        UserPrincipal admin = new UserPrincipal(1L, "admin", null, "ADMIN", 0);
+
+        Page<CardDTO> page = cardService.getAllCards(admin, PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "id")));
+
+        assertEquals(cardIds.get(CARDS - 1), page.getContent().get(0).getId());
+        assertEquals(owner.getUsername(), page.getContent().get(0).getOwnerUsername());
+        assertEquals(0, statistics.getEntityLoadCount());
+        // Общее число — из CardCountRegistry, без COUNT(*)
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void scrollAllCards_shouldSeekPastCursorWithoutCount() {
+        UserPrincipal admin = new UserPrincipal(1L, "admin", null, "ADMIN", 0);
+        // Курсор «сразу перед первой картой теста», как если бы предыдущая страница кончилась на ней
+        String cursor = KeysetCursor.encode("id", "", cardIds.get(0) - 1);
+
+        CursorPageDTO<CardDTO> first = cardService.scrollAllCards(admin, "id", cursor, 2, false);
+        CursorPageDTO<CardDTO> second = cardService.scrollAllCards(admin, "id", first.getNext(), 2, false);
+
+        assertEquals(cardIds.subList(0, 2), first.getContent().stream().map(CardDTO::getId).toList());
+        assertEquals(cardIds.get(2), second.getContent().get(0).getId());
+        assertNull(first.getTotal());
+        // По одному запросу на страницу: ни OFFSET-счётчика, ни COUNT
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+}
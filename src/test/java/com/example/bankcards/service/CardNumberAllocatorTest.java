@@ -0,0 +1,74 @@
+package com.example.bankcards.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardNumberAllocatorTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void nextCardNumber_shouldQuerySequenceOncePerBlock() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(1L, 101L);
+        CardNumberAllocator allocator = new CardNumberAllocator(jdbcTemplate, 400000);
+
+        Set<String> issued = new HashSet<>();
+        for (int i = 0; i < CardNumberAllocator.BLOCK_SIZE + 1; i++) {
+            issued.add(allocator.nextCardNumber());
+        }
+
+        assertEquals(CardNumberAllocator.BLOCK_SIZE + 1, issued.size());
+        verify(jdbcTemplate, times(2)).queryForObject(anyString(), eq(Long.class));
+    }
+
+    @Test
+    void nextCardNumber_shouldReturnLuhnValidNumberWithBin() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(12345L);
+        CardNumberAllocator allocator = new CardNumberAllocator(jdbcTemplate, 400000);
+
+        String cardNumber = allocator.nextCardNumber();
+
+        assertEquals("400000000012345", cardNumber.substring(0, 15));
+        assertTrue(isLuhnValid(cardNumber));
+    }
+
+    @Test
+    void luhnCheckDigit_shouldMatchKnownValue() {
+        assertEquals(3, CardNumberAllocator.luhnCheckDigit(7992739871L));
+        assertEquals("4000009999999991", CardNumberAllocator.format(400000999999999L));
+    }
+
+    @Test
+    void nextCardNumber_shouldFailWhenAccountRangeExhausted() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(1_000_000_000L);
+        CardNumberAllocator allocator = new CardNumberAllocator(jdbcTemplate, 400000);
+
+        assertThrows(IllegalStateException.class, allocator::nextCardNumber);
+    }
+
+    private static boolean isLuhnValid(String number) {
+        int sum = 0;
+        for (int i = 0; i < number.length(); i++) {
+            int digit = number.charAt(number.length() - 1 - i) - '0';
+            if (i % 2 == 1) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+        }
+        return sum % 10 == 0;
+    }
+}
@@ -1,39 +1,47 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.BulkCardResultDTO;
 import com.example.bankcards.dto.CardCreateDTO;
 import com.example.bankcards.dto.CardDTO;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.entity.User;
+import com.example.bankcards.exception.ResourceNotFoundException;
 import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.CardSummary;
+import com.example.bankcards.repository.CardWithOwner;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserPrincipal;
+import com.example.bankcards.util.CardCipher;
+import com.example.bankcards.util.CardNumberHasher;
 
-import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 
 import java.time.LocalDate;
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.hibernate.validator.internal.util.Contracts.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 // CardServiceTest.java
@@ -43,18 +51,47 @@ class CardServiceTest {
     @Mock
     private CardRepository cardRepository;
     @Mock private UserRepository userRepository;
+    @Spy
+    private CardNumberHasher cardNumberHasher = new CardNumberHasher("test-index-key");
+    @Mock
+    private CardNumberAllocator cardNumberAllocator;
+    @Spy
+    private CardCipher cardCipher = new CardCipher("1234567890123456");
+    @Mock
+    private TransferEngine transferEngine;
+    @Mock
+    private TransferLedger transferLedger;
+    @Mock
+    private TransferBatcher transferBatcher;
+    @Mock
+    private IdempotencyService idempotencyService;
+    @Mock
+    private CardCountRegistry cardCountRegistry;
 
     @InjectMocks
     private CardService cardService;
 
-    @Value("${encryption.key}")
-    private String encryptionKey;
+    private static final UserPrincipal USER = new UserPrincipal(7L, "user", null, "USER", 0);
+    private static final UserPrincipal ADMIN = new UserPrincipal(1L, "admin", null, "ADMIN", 0);
+
+    // Проекции репозитория в тестах — прокси поверх строки-Map, как их строит Spring Data из Tuple
+    private final ProjectionFactory projections = new SpelAwareProxyProjectionFactory();
 
-    @BeforeEach
-    void setup() {
-        ReflectionTestUtils.setField(cardService, "encryptionKey", "1234567890123456");
+    private CardSummary summary(Long id, Long ownerId, String last4, String cardNumber, Double balance) {
+        return projections.createProjection(CardSummary.class, summaryRow(id, ownerId, last4, cardNumber, balance));
     }
 
+    private static Map<String, Object> summaryRow(Long id, Long ownerId, String last4, String cardNumber, Double balance) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("ownerId", ownerId);
+        row.put("last4", last4);
+        row.put("cardNumber", cardNumber);
+        row.put("expiryDate", LocalDate.now().plusYears(3));
+        row.put("status", CardStatus.ACTIVE);
+        row.put("balance", balance);
+        return row;
+    }
 
     @Test
     void createCard_shouldReturnCardDTO() {
@@ -64,243 +101,303 @@ class CardServiceTest {
         dto.setInitialBalance(100.0);
 
         User user = new User();
+        user.setId(7L);
         user.setUsername("user");
 
         when(userRepository.findByUsername("user")).thenReturn(Optional.of(user));
-        when(cardRepository.existsByCardNumber(anyString())).thenReturn(false);
+        when(cardNumberAllocator.nextCardNumber()).thenReturn("4000000000001000");
         when(cardRepository.save(any())).thenAnswer(i -> i.getArgument(0));
 
         CardDTO result = cardService.createCard(dto);
 
         assertNotNull(result);
         assertEquals("user", result.getOwnerUsername());
-        verify(cardRepository).save(any(Card.class));
+        verify(cardRepository).save(argThat(card ->
+                card.getPanHmac() != null && card.getLast4Hmac() != null
+                        && card.getLast4Hmac().equals(cardNumberHasher.hashLast4(result.getMaskedCardNumber().substring(15)))));
+        verify(cardCountRegistry).cardCreated(7L, CardStatus.ACTIVE);
     }
 
     @Test
     void getUserCards_shouldReturnUserCards() {
-        User user = new User();
-        user.setUsername("user");
+        CardSummary card = summary(1L, 7L, null, cardCipher.encrypt("4111111111111111"), 100.0);
 
-        Card card = new Card();
-        card.setId(1L);
-        card.setCardNumber(cardService.encryptCardNumber("4111111111111111"));
-        card.setOwner(user);
-        card.setStatus(CardStatus.ACTIVE);
-        card.setBalance(100.0);
+        when(cardRepository.findSummariesByOwnerId(eq(7L), any())).thenReturn(new PageImpl<>(List.of(card)));
 
-        mockAuthentication("user", "USER");
-
-        when(userRepository.findByUsername("user")).thenReturn(Optional.of(user));
-        when(cardRepository.findByOwner(eq(user), any())).thenReturn(new PageImpl<>(List.of(card)));
-
-        Page<CardDTO> result = cardService.getUserCards(Pageable.unpaged());
+        Page<CardDTO> result = cardService.getUserCards(USER, Pageable.unpaged());
 
         assertEquals(1, result.getTotalElements());
         assertEquals("user", result.getContent().get(0).getOwnerUsername());
     }
 
     @Test
-    void createCard_shouldThrowIfUserNotFound() {
-        CardCreateDTO dto = new CardCreateDTO();
-        dto.setOwnerUsername("missing");
+    void getUserCards_shouldUseStoredLast4WithoutDecrypting() {
+        CardSummary card = summary(1L, 7L, "4321", "not-a-ciphertext", 100.0);
 
-        when(userRepository.findByUsername("missing")).thenReturn(Optional.empty());
+        when(cardRepository.findSummariesByOwnerId(eq(7L), any())).thenReturn(new PageImpl<>(List.of(card)));
 
-        assertThrows(RuntimeException.class, () -> cardService.createCard(dto));
+        Page<CardDTO> result = cardService.getUserCards(USER, Pageable.unpaged());
+
+        assertEquals("**** **** **** 4321", result.getContent().get(0).getMaskedCardNumber());
     }
 
     @Test
-    void blockCard_shouldThrowIfNotOwnerOrAdmin() {
-        User owner = new User();
-        owner.setUsername("someone");
+    void revealCardNumber_shouldReturnFullNumberForOwner() {
+        User user = new User();
+        user.setId(7L);
+        user.setUsername("user");
 
         Card card = new Card();
         card.setId(1L);
-        card.setOwner(owner);
-        card.setStatus(CardStatus.ACTIVE);
-
-        mockAuthentication("user", "USER");
+        card.setCardNumber(cardCipher.encrypt("4111111111111111"));
+        card.setOwner(user);
 
         when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
 
-        assertThrows(RuntimeException.class, () -> cardService.blockCard(1L));
+        assertEquals("4111111111111111", cardService.revealCardNumber(USER, 1L));
     }
 
     @Test
-    void activateCard_shouldThrowIfNotAdmin() {
+    void revealCardNumber_shouldThrowIfNotOwner() {
+        User owner = new User();
+        owner.setId(8L);
+        owner.setUsername("someone");
+
         Card card = new Card();
-        card.setStatus(CardStatus.BLOCKED);
+        card.setOwner(owner);
 
-        mockAuthentication("user", "USER");
         when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
 
-        assertThrows(RuntimeException.class, () -> cardService.activateCard(1L));
+        assertThrows(RuntimeException.class, () -> cardService.revealCardNumber(USER, 1L));
     }
 
     @Test
-    void deleteCard_shouldThrowIfNotAdmin() {
-        Card card = new Card();
-        card.setId(1L);
+    void createCards_shouldResolveOwnersOnceAndReportPerRow() {
+        User user = new User();
+        user.setId(7L);
+        user.setUsername("user");
 
-        mockAuthentication("user", "USER");
+        CardCreateDTO valid = new CardCreateDTO();
+        valid.setOwnerUsername("user");
+        valid.setExpiryDate(LocalDate.now().plusYears(3));
+        valid.setInitialBalance(10.0);
 
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
+        CardCreateDTO missingOwner = new CardCreateDTO();
+        missingOwner.setOwnerUsername("missing");
+        missingOwner.setExpiryDate(LocalDate.now().plusYears(3));
+        missingOwner.setInitialBalance(10.0);
+
+        CardCreateDTO noExpiry = new CardCreateDTO();
+        noExpiry.setOwnerUsername("user");
+        noExpiry.setInitialBalance(10.0);
+
+        when(userRepository.findByUsernameIn(any())).thenReturn(List.of(user));
+        when(cardNumberAllocator.nextCardNumber()).thenReturn("4000000000001000");
+
+        List<BulkCardResultDTO> results = cardService.createCards(List.of(valid, missingOwner, noExpiry));
 
-        assertThrows(RuntimeException.class, () -> cardService.deleteCard(1L));
+        assertEquals(3, results.size());
+        assertEquals("user", results.get(0).getCard().getOwnerUsername());
+        assertEquals("User not found", results.get(1).getError());
+        assertEquals("Expiry date is required", results.get(2).getError());
+        verify(userRepository, times(1)).findByUsernameIn(any());
+        verify(cardRepository).saveAll(argThat(cards -> ((List<Card>) cards).size() == 1));
+        verify(cardCountRegistry, times(1)).cardCreated(7L, CardStatus.ACTIVE);
     }
 
     @Test
-    void transfer_shouldThrowIfCardNotFound() {
-        mockAuthentication("user", "USER");
+    void createCard_shouldThrowIfUserNotFound() {
+        CardCreateDTO dto = new CardCreateDTO();
+        dto.setOwnerUsername("missing");
 
-        when(cardRepository.findById(1L)).thenReturn(Optional.empty());
+        when(userRepository.findByUsername("missing")).thenReturn(Optional.empty());
 
-        assertThrows(RuntimeException.class, () -> cardService.transfer(1L, 2L, 10.0));
+        assertThrows(RuntimeException.class, () -> cardService.createCard(dto));
     }
 
     @Test
-    void transfer_shouldThrowIfNotOwner() {
-        User another = new User();
-        another.setUsername("another");
+    void deleteCard_shouldThrowIfNotAdmin() {
+        Card card = new Card();
+        card.setId(1L);
 
-        Card from = new Card();
-        from.setId(1L);
-        from.setOwner(another);
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
 
-        Card to = new Card();
-        to.setId(2L);
-        to.setOwner(another);
+        assertThrows(RuntimeException.class, () -> cardService.deleteCard(USER, 1L));
+    }
 
-        mockAuthentication("user", "USER");
+    @Test
+    void transfer_shouldUseOwnerIdFromPrincipalWithoutLoadingUser() {
+        cardService.transfer(USER, 1L, 2L, 10.0);
 
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(from));
-        when(cardRepository.findById(2L)).thenReturn(Optional.of(to));
+        verify(transferEngine).transfer(7L, 1L, 2L, 10.0);
+        verifyNoInteractions(userRepository);
+    }
 
-        assertThrows(RuntimeException.class, () -> cardService.transfer(1L, 2L, 10.0));
+    @Test
+    void transfer_shouldRejectNonPositiveAmount() {
+        assertThrows(RuntimeException.class, () -> cardService.transfer(USER, 1L, 2L, 0.0));
+        assertThrows(RuntimeException.class, () -> cardService.transfer(USER, 1L, 2L, -5.0));
+        verifyNoInteractions(transferEngine);
     }
 
     @Test
-    void transfer_shouldThrowIfInsufficientBalance() {
-        User user = new User();
-        user.setUsername("user");
+    void transfer_shouldPropagateBusinessErrorWithoutRetry() {
 
-        Card from = new Card();
-        from.setId(1L);
-        from.setBalance(5.0);
-        from.setOwner(user);
+        doThrow(new RuntimeException("Insufficient balance"))
+                .when(transferEngine).transfer(7L, 1L, 2L, 10.0);
 
-        Card to = new Card();
-        to.setId(2L);
-        to.setOwner(user);
+        RuntimeException e = assertThrows(RuntimeException.class, () -> cardService.transfer(USER, 1L, 2L, 10.0));
+        assertEquals("Insufficient balance", e.getMessage());
+        verify(transferEngine, times(1)).transfer(7L, 1L, 2L, 10.0);
+        verifyNoInteractions(transferLedger);
+    }
 
-        mockAuthentication("user", "USER");
+    @Test
+    void transfer_shouldRetryOnConcurrencyFailure() {
 
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(from));
-        when(cardRepository.findById(2L)).thenReturn(Optional.of(to));
+        doThrow(new CannotAcquireLockException("deadlock detected"))
+                .doNothing()
+                .when(transferEngine).transfer(7L, 1L, 2L, 10.0);
 
-        assertThrows(RuntimeException.class, () -> cardService.transfer(1L, 2L, 10.0));
+        cardService.transfer(USER, 1L, 2L, 10.0);
+
+        verify(transferEngine, times(2)).transfer(7L, 1L, 2L, 10.0);
     }
 
     @Test
-    void getAllCards_shouldThrowIfNotAdmin() {
-        mockAuthentication("user", "USER");
+    void transfer_shouldGiveUpAfterMaxAttempts() {
 
-        assertThrows(RuntimeException.class, () -> cardService.getAllCards(Pageable.unpaged()));
+        doThrow(new CannotAcquireLockException("deadlock detected"))
+                .when(transferEngine).transfer(7L, 1L, 2L, 10.0);
+
+        assertThrows(CannotAcquireLockException.class, () -> cardService.transfer(USER, 1L, 2L, 10.0));
+        verify(transferEngine, times(CardService.MAX_TRANSFER_ATTEMPTS)).transfer(7L, 1L, 2L, 10.0);
     }
 
     @Test
-    void getUserCards_shouldThrowIfUserNotFound() {
-        mockAuthentication("user", "USER");
-
-        when(userRepository.findByUsername("user")).thenReturn(Optional.empty());
+    void getAllCards_shouldThrowIfNotAdmin() {
 
-        assertThrows(RuntimeException.class, () -> cardService.getUserCards(Pageable.unpaged()));
+        assertThrows(RuntimeException.class, () -> cardService.getAllCards(USER, Pageable.unpaged()));
     }
 
     @Test
-    void getUserCardsBySearch_shouldThrowIfUserNotFound() {
-        mockAuthentication("user", "USER");
+    void getUserCards_shouldQueryByOwnerIdWithoutLoadingUser() {
+        when(cardRepository.findSummariesByOwnerId(eq(7L), any())).thenReturn(new PageImpl<>(List.of()));
 
-        when(userRepository.findByUsername("user")).thenReturn(Optional.empty());
+        cardService.getUserCards(USER, Pageable.unpaged());
 
-        assertThrows(RuntimeException.class, () -> cardService.getUserCardsBySearch("1234", Pageable.unpaged()));
+        verifyNoInteractions(userRepository);
     }
 
     @Test
-    void decryptCardNumber_shouldThrowIfBase64Invalid() {
-        ReflectionTestUtils.setField(cardService, "encryptionKey", "1234567890123456");
+    void getUserCardsBySearch_shouldQueryByOwnerIdWithoutLoadingUser() {
+        when(cardRepository.findSummariesByOwnerIdAndLast4Hmac(eq(7L), eq(cardNumberHasher.hashLast4("1234")), any()))
+                .thenReturn(new PageImpl<>(List.of()));
 
-        String invalid = "%%%notbase64%%%";
+        cardService.getUserCardsBySearch(USER, "1234", Pageable.unpaged());
 
-        assertThrows(RuntimeException.class, () -> cardService.decryptCardNumber(invalid));
+        verifyNoInteractions(userRepository);
     }
 
-
     @Test
     void getUserCardsBySearch_shouldReturnFilteredCards() {
-        User user = new User();
-        user.setUsername("user");
+        CardSummary card = summary(1L, 7L, null, cardCipher.encrypt("4111111111115678"), 50.0);
 
-        Card card = new Card();
-        card.setId(1L);
-        card.setCardNumber(cardService.encryptCardNumber("4111111111115678"));
-        card.setOwner(user);
-        card.setStatus(CardStatus.ACTIVE);
-        card.setBalance(50.0);
-
-        mockAuthentication("user", "USER");
-
-        when(userRepository.findByUsername("user")).thenReturn(Optional.of(user));
-        when(cardRepository.findByOwnerAndCardNumberContaining(eq(user), eq("5678"), any()))
+        when(cardRepository.findSummariesByOwnerIdAndLast4Hmac(eq(7L), eq(cardNumberHasher.hashLast4("5678")), any()))
                 .thenReturn(new PageImpl<>(List.of(card)));
 
-        Page<CardDTO> result = cardService.getUserCardsBySearch("5678", Pageable.unpaged());
+        Page<CardDTO> result = cardService.getUserCardsBySearch(USER, "5678", Pageable.unpaged());
 
         assertEquals(1, result.getContent().size());
         assertEquals("user", result.getContent().get(0).getOwnerUsername());
+        assertEquals("**** **** **** 5678", result.getContent().get(0).getMaskedCardNumber());
+    }
+
+    @Test
+    void getUserCardsBySearch_shouldLookupFullNumberByPanHmac() {
+        when(cardRepository.findSummariesByOwnerIdAndPanHmac(eq(7L), eq(cardNumberHasher.hashPan("4111111111115678")), any()))
+                .thenReturn(new PageImpl<>(List.of()));
+
+        Page<CardDTO> result = cardService.getUserCardsBySearch(USER, "4111 1111 1111 5678", Pageable.unpaged());
+
+        assertEquals(0, result.getContent().size());
+        verify(cardRepository, never()).findSummariesByOwnerIdAndLast4Hmac(any(), any(), any());
+    }
+
+    @Test
+    void getUserCardsBySearch_shouldReturnEmptyForPartialNumber() {
+        Page<CardDTO> result = cardService.getUserCardsBySearch(USER, "56", Pageable.unpaged());
+
+        assertEquals(0, result.getContent().size());
+        verifyNoInteractions(cardRepository);
     }
 
     @Test
     void deleteCard_shouldDeleteIfAdmin() {
+        User owner = new User();
+        owner.setId(7L);
         Card card = new Card();
         card.setId(1L);
-
-        mockAuthentication("admin", "ADMIN");
+        card.setOwner(owner);
+        card.setStatus(CardStatus.BLOCKED);
 
         when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
 
-        cardService.deleteCard(1L);
+        cardService.deleteCard(ADMIN, 1L);
 
         verify(cardRepository).delete(card);
+        verify(cardCountRegistry).cardDeleted(7L, CardStatus.BLOCKED);
     }
 
     @Test
     void getAllCards_shouldReturnAllCardsIfAdmin() {
-        User admin = new User();
-        admin.setUsername("admin");
-
-        Card card = new Card();
-        card.setId(1L);
-        card.setCardNumber(cardService.encryptCardNumber("4111111111111111"));
-        card.setOwner(admin);
-        card.setStatus(CardStatus.ACTIVE);
-        card.setBalance(99.0);
-
-        mockAuthentication("admin", "ADMIN");
+        Map<String, Object> row = new HashMap<>(summaryRow(1L, 3L, "1111", "ignored", 99.0));
+        row.put("ownerUsername", "bob");
+        CardWithOwner card = projections.createProjection(CardWithOwner.class, row);
 
-        when(cardRepository.findAll(any(Pageable.class)))
+        when(cardRepository.findAllWithOwner(any(Pageable.class)))
                 .thenReturn(new PageImpl<>(List.of(card)));
 
-        Page<CardDTO> result = cardService.getAllCards(Pageable.unpaged());
+        Page<CardDTO> result = cardService.getAllCards(ADMIN, Pageable.unpaged());
 
         assertEquals(1, result.getContent().size());
-        assertEquals("admin", result.getContent().get(0).getOwnerUsername());
+        assertEquals("bob", result.getContent().get(0).getOwnerUsername());
+        assertEquals("**** **** **** 1111", result.getContent().get(0).getMaskedCardNumber());
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void getAllCards_shouldTakeTotalFromRegistryInsteadOfCount() {
+        Map<String, Object> row = new HashMap<>(summaryRow(1L, 3L, "1111", "ignored", 99.0));
+        row.put("ownerUsername", "bob");
+        CardWithOwner card = projections.createProjection(CardWithOwner.class, row);
+        Pageable firstPage = PageRequest.of(0, 1);
+
+        when(cardRepository.findAllWithOwner(firstPage)).thenReturn(new SliceImpl<>(List.of(card), firstPage, true));
+        when(cardCountRegistry.total()).thenReturn(1_000_000L);
+
+        Page<CardDTO> result = cardService.getAllCards(ADMIN, firstPage);
+
+        assertEquals(1_000_000L, result.getTotalElements());
+        verify(cardRepository, never()).count();
+    }
+
+    @Test
+    void getUserCardsSlice_shouldNotCount() {
+        Pageable firstPage = PageRequest.of(0, 1);
+        when(cardRepository.findSummariesByOwnerId(7L, firstPage))
+                .thenReturn(new SliceImpl<>(List.of(summary(1L, 7L, "4321", "n/a", 1.0)), firstPage, true));
+
+        Slice<CardDTO> result = cardService.getUserCardsSlice(USER, firstPage);
+
+        assertTrue(result.hasNext());
+        verify(cardRepository, never()).countByOwnerId(any());
     }
 
     @Test
     void getCardBalance_shouldReturnBalanceIfOwner() {
         User user = new User();
+        user.setId(7L);
         user.setUsername("user");
 
         Card card = new Card();
@@ -308,11 +405,9 @@ class CardServiceTest {
         card.setOwner(user);
         card.setBalance(123.0);
 
-        mockAuthentication("user", "ROLE_USER");
-
         when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
 
-        Double balance = cardService.getCardBalance(1L);
+        Double balance = cardService.getCardBalance(USER, 1L);
 
         assertEquals(123.0, balance);
     }
@@ -320,95 +415,127 @@ class CardServiceTest {
     @Test
     void getCardBalance_shouldThrowIfNotOwner() {
         User owner = new User();
+        owner.setId(8L);
         owner.setUsername("someone");
 
         Card card = new Card();
         card.setOwner(owner);
 
-        mockAuthentication("user", "USER");
-
         when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
 
-        assertThrows(RuntimeException.class, () -> cardService.getCardBalance(1L));
+        assertThrows(RuntimeException.class, () -> cardService.getCardBalance(USER, 1L));
+    }
+
+    @Test
+    void transfer_shouldDelegateToEngineWithOwnerId() {
+        cardService.transfer(USER, 1L, 2L, 30.0);
+
+        verify(transferEngine).transfer(7L, 1L, 2L, 30.0);
+        verify(transferLedger).record(7L, 1L, 2L, 30.0);
+        verify(cardRepository, never()).findById(any());
+        verify(cardRepository, never()).save(any());
     }
 
     @Test
-    void encryptAndDecryptCardNumber_shouldReturnOriginal() {
-        String cardNumber = "4111111111111111";
-        ReflectionTestUtils.setField(cardService, "encryptionKey", "1234567890123456");
+    void transfer_shouldUseGroupCommitWhenEnabled() {
+        when(transferBatcher.isEnabled()).thenReturn(true);
 
-        String encrypted = cardService.encryptCardNumber(cardNumber);
-        String decrypted = cardService.decryptCardNumber(encrypted);
+        cardService.transfer(USER, 1L, 2L, 30.0);
 
-        assertEquals(cardNumber, decrypted);
+        verify(transferBatcher).transfer(7L, 1L, 2L, 30.0);
+        verifyNoInteractions(transferEngine);
+        verify(transferLedger).record(7L, 1L, 2L, 30.0);
     }
 
+    @Test
+    void transfer_withIdempotencyKey_shouldRunOnceAndRecordLedger() {
+        when(idempotencyService.execute(eq(7L), eq("key-1"), eq("1:2:30.0"), any())).thenAnswer(i -> {
+            i.getArgument(3, Runnable.class).run();
+            return true;
+        });
+
+        cardService.transfer(USER, 1L, 2L, 30.0, "key-1");
+
+        verify(transferEngine).transfer(7L, 1L, 2L, 30.0);
+        verify(transferLedger).record(7L, 1L, 2L, 30.0);
+        verifyNoInteractions(transferBatcher);
+    }
 
     @Test
-    void transfer_shouldTransferBalance() {
-        User user = new User();
-        user.setUsername("user");
+    void transfer_withReplayedIdempotencyKey_shouldNotRecordLedger() {
+        when(idempotencyService.execute(eq(7L), eq("key-1"), eq("1:2:30.0"), any())).thenReturn(false);
 
-        Card from = new Card();
-        from.setId(1L);
-        from.setBalance(100.0);
-        from.setOwner(user);
+        cardService.transfer(USER, 1L, 2L, 30.0, "key-1");
 
-        Card to = new Card();
-        to.setId(2L);
-        to.setBalance(50.0);
-        to.setOwner(user);
+        verifyNoInteractions(transferEngine, transferLedger);
+    }
 
-        mockAuthentication("user", "ROLE_USER");
+    @Test
+    void transfer_shouldRejectBlankIdempotencyKey() {
+        assertThrows(RuntimeException.class, () -> cardService.transfer(USER, 1L, 2L, 30.0, " "));
+        verifyNoInteractions(idempotencyService);
+    }
 
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(from));
-        when(cardRepository.findById(2L)).thenReturn(Optional.of(to));
+    @Test
+    void blockCard_shouldUpdateStatusWithOwnerCheck() {
+        when(cardRepository.updateStatusForOwner(1L, 7L, "BLOCKED")).thenReturn(Optional.of("ACTIVE"));
 
-        cardService.transfer(1L, 2L, 30.0);
+        cardService.blockCard(USER, 1L);
 
-        assertEquals(70.0, from.getBalance());
-        assertEquals(80.0, to.getBalance());
-        verify(cardRepository, times(2)).save(any());
+        verify(cardRepository, never()).findById(any());
+        verify(cardRepository, never()).save(any());
+        verify(cardCountRegistry).statusChanged(CardStatus.ACTIVE, CardStatus.BLOCKED);
     }
 
     @Test
-    void blockCard_shouldBlockIfOwnerOrAdmin() {
-        User user = new User();
-        user.setUsername("user");
+    void blockCard_shouldThrowNotFoundIfNotOwned() {
+        when(cardRepository.updateStatusForOwner(1L, 7L, "BLOCKED")).thenReturn(Optional.empty());
 
-        Card card = new Card();
-        card.setId(1L);
-        card.setOwner(user);
-        card.setStatus(CardStatus.ACTIVE);
+        assertThrows(ResourceNotFoundException.class, () -> cardService.blockCard(USER, 1L));
+        verifyNoInteractions(cardCountRegistry);
+    }
 
-        mockAuthentication("user", "ROLE_USER");
+    @Test
+    void blockCard_shouldAllowAdminForForeignCard() {
+        when(cardRepository.updateStatus(1L, "BLOCKED")).thenReturn(Optional.of("ACTIVE"));
 
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
+        cardService.blockCard(ADMIN, 1L);
 
-        cardService.blockCard(1L);
+        verify(cardRepository, never()).updateStatusForOwner(any(), any(), any());
+    }
 
-        assertEquals(CardStatus.BLOCKED, card.getStatus());
+    @Test
+    void activateCard_shouldThrowIfNotAdmin() {
+        assertThrows(RuntimeException.class, () -> cardService.activateCard(USER, 1L));
+
+        verifyNoInteractions(cardRepository);
     }
 
     @Test
     void activateCard_shouldActivateIfAdmin() {
-        Card card = new Card();
-        card.setStatus(CardStatus.BLOCKED);
+        when(cardRepository.updateStatus(1L, "ACTIVE")).thenReturn(Optional.of("BLOCKED"));
+
+        cardService.activateCard(ADMIN, 1L);
 
-        mockAuthentication("admin", "ADMIN");
-        when(cardRepository.findById(any())).thenReturn(Optional.of(card));
+        verify(cardRepository).updateStatus(1L, "ACTIVE");
+        verify(cardCountRegistry).statusChanged(CardStatus.BLOCKED, CardStatus.ACTIVE);
+    }
 
-        cardService.activateCard(1L);
+    @Test
+    void activateCard_shouldThrowNotFoundForMissingCard() {
+        when(cardRepository.updateStatus(99L, "ACTIVE")).thenReturn(Optional.empty());
 
-        assertEquals(CardStatus.ACTIVE, card.getStatus());
+        assertThrows(ResourceNotFoundException.class, () -> cardService.activateCard(ADMIN, 99L));
     }
 
-    private void mockAuthentication(String username, String... roles) {
-        var authorities = Arrays.stream(roles)
-                .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
-                .toList();
+    @Test
+    void deleteUserWithCards_shouldCountEachDeletedCard() {
+        when(cardRepository.deleteByOwnerIdReturningStatus(7L)).thenReturn(List.of("ACTIVE", "ACTIVE", "BLOCKED"));
+
+        cardService.deleteUserWithCards(7L);
 
-        Authentication auth = new UsernamePasswordAuthenticationToken(username, null, authorities);
-        SecurityContextHolder.getContext().setAuthentication(auth);
+        verify(userRepository).deleteById(7L);
+        verify(cardCountRegistry, times(2)).cardDeleted(7L, CardStatus.ACTIVE);
+        verify(cardCountRegistry).cardDeleted(7L, CardStatus.BLOCKED);
     }
 }
@@ -0,0 +1,108 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserPrincipal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Параллельная смена статуса одной карты на реальной БД: прежний статус читается под блокировкой строки,
+// поэтому счётчики CardCountRegistry меняются ровно на один переход, сколько бы запросов ни пришло одновременно
+@SpringBootTest
+class CardStatusConcurrencyTest {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private CardService cardService;
+    @Autowired
+    private CardCountRegistry cardCountRegistry;
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    private User owner;
+    private Long cardId;
+
+    @BeforeEach
+    void setUp() {
+        owner = new User();
+        owner.setUsername("status-" + UUID.randomUUID());
+        owner.setPassword("n/a");
+        owner.setRole("USER");
+        owner = userRepository.save(owner);
+
+        Card card = new Card();
+        card.setCardNumber("status-" + UUID.randomUUID());
+        card.setOwner(owner);
+        card.setExpiryDate(LocalDate.now().plusYears(3));
+        card.setStatus(CardStatus.ACTIVE);
+        card.setBalance(0.0);
+        cardId = cardRepository.save(card).getId();
+        // Карта сохранена мимо CardService: счётчики сверяются с БД, дальше они меняются только переходами статуса
+        cardCountRegistry.reconcile();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        cardRepository.deleteById(cardId);
+        userRepository.delete(owner);
+    }
+
+    @Test
+    void parallelStatusChanges_shouldCountOneTransition() throws Exception {
+        UserPrincipal user = new UserPrincipal(owner.getId(), owner.getUsername(), null, "USER", 0);
+        UserPrincipal admin = new UserPrincipal(1L, "admin", null, "ADMIN", 0);
+        long active = cardCountRegistry.countByStatus(CardStatus.ACTIVE);
+        long blocked = cardCountRegistry.countByStatus(CardStatus.BLOCKED);
+
+        runInParallel(id -> cardService.blockCard(user, id));
+
+        assertEquals(CardStatus.BLOCKED, cardRepository.findById(cardId).orElseThrow().getStatus());
+        assertEquals(active - 1, cardCountRegistry.countByStatus(CardStatus.ACTIVE));
+        assertEquals(blocked + 1, cardCountRegistry.countByStatus(CardStatus.BLOCKED));
+
+        runInParallel(id -> cardService.activateCard(admin, id));
+
+        assertEquals(CardStatus.ACTIVE, cardRepository.findById(cardId).orElseThrow().getStatus());
+        assertEquals(active, cardCountRegistry.countByStatus(CardStatus.ACTIVE));
+        assertEquals(blocked, cardCountRegistry.countByStatus(CardStatus.BLOCKED));
+    }
+
+    private void runInParallel(Consumer<Long> change) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    change.accept(cardId);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.CardCipher;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Выгрузка читает таблицы целиком; проверяются только строки, созданные тестом
+@SpringBootTest
+class ExportServiceTest {
+
+    @Autowired
+    private ExportService exportService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private CardCipher cardCipher;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final List<Long> cardIds = new ArrayList<>();
+    private User owner;
+
+    @BeforeEach
+    void setUp() {
+        owner = new User();
+        // Запятая и кавычка в имени — проверка экранирования CSV
+        owner.setUsername("export,\"" + UUID.randomUUID());
+        owner.setPassword("n/a");
+        owner.setRole("USER");
+        owner = userRepository.save(owner);
+        cardIds.add(saveCard("4000001234567890", "7890"));
+        // Карта без last4 (до CardBackfillService): цифры берутся из расшифрованного номера
+        cardIds.add(saveCard("4000009876543210", null));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        cardRepository.deleteAllById(cardIds);
+        userRepository.delete(owner);
+    }
+
+    @Test
+    void exportCards_ndjson_shouldWriteMaskedCardPerLine() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.exportCards(ExportService.Format.NDJSON, out);
+
+        List<JsonNode> rows = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            JsonNode row = objectMapper.readTree(line);
+            if (owner.getUsername().equals(row.get("ownerUsername").asText())) {
+                rows.add(row);
+            }
+        }
+        assertEquals(2, rows.size());
+        assertEquals(cardIds.get(0).longValue(), rows.get(0).get("id").asLong());
+        assertEquals("**** **** **** 7890", rows.get(0).get("maskedCardNumber").asText());
+        assertEquals("**** **** **** 3210", rows.get(1).get("maskedCardNumber").asText());
+        assertEquals(LocalDate.now().plusYears(3).toString(), rows.get(0).get("expiryDate").asText());
+        assertEquals("ACTIVE", rows.get(0).get("status").asText());
+        assertEquals(10.0, rows.get(0).get("balance").asDouble());
+        assertFalse(out.toString(StandardCharsets.UTF_8).contains("4000001234567890"));
+    }
+
+    @Test
+    void exportCards_csv_shouldQuoteUsername() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.exportCards(ExportService.Format.CSV, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals("id,maskedCardNumber,ownerUsername,expiryDate,status,balance", lines[0]);
+        String quoted = "\"" + owner.getUsername().replace("\"", "\"\"") + "\"";
+        assertTrue(List.of(lines).contains(cardIds.get(0) + ",**** **** **** 7890," + quoted + ","
+                + LocalDate.now().plusYears(3) + ",ACTIVE,10.0"));
+    }
+
+    @Test
+    void exportCards_shouldSkipUndecryptableCard() throws IOException {
+        // Повреждённый номер без last4: строка пропускается, выгрузка не обрывается
+        Card broken = new Card();
+        broken.setCardNumber("not-base64!");
+        broken.setOwner(owner);
+        broken.setExpiryDate(LocalDate.now().plusYears(3));
+        broken.setStatus(CardStatus.ACTIVE);
+        broken.setBalance(10.0);
+        Long brokenId = cardRepository.save(broken).getId();
+        cardIds.add(brokenId);
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+
+        exportService.exportCards(ExportService.Format.NDJSON, ndjson);
+        exportService.exportCards(ExportService.Format.CSV, csv);
+
+        List<Long> ids = new ArrayList<>();
+        for (String line : ndjson.toString(StandardCharsets.UTF_8).split("\n")) {
+            ids.add(objectMapper.readTree(line).get("id").asLong());
+        }
+        assertTrue(ids.containsAll(cardIds.subList(0, 2)));
+        assertFalse(ids.contains(brokenId));
+        for (String line : csv.toString(StandardCharsets.UTF_8).split("\n")) {
+            assertFalse(line.isEmpty());
+            assertFalse(line.startsWith(brokenId + ","));
+        }
+    }
+
+    @Test
+    void exportUsers_shouldIncludeCreatedUser() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.exportUsers(ExportService.Format.NDJSON, out);
+
+        JsonNode expected = objectMapper.createObjectNode()
+                .put("id", owner.getId())
+                .put("username", owner.getUsername())
+                .put("role", "USER");
+        boolean found = false;
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            found |= objectMapper.readTree(line).equals(expected);
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    void exportCards_shouldPropagateClientDisconnect() {
+        OutputStream closed = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        assertThrows(IOException.class, () -> exportService.exportCards(ExportService.Format.CSV, closed));
+    }
+
+    private Long saveCard(String number, String last4) {
+        Card card = new Card();
+        card.setCardNumber(cardCipher.encrypt(number));
+        card.setLast4(last4);
+        card.setOwner(owner);
+        card.setExpiryDate(LocalDate.now().plusYears(3));
+        card.setStatus(CardStatus.ACTIVE);
+        card.setBalance(10.0);
+        return cardRepository.save(card).getId();
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.bankcards.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private IdempotencyService idempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new IdempotencyService(jdbcTemplate, transactionManager, meterRegistry, 24, 1000);
+    }
+
+    @Test
+    void execute_shouldRunOnceAndReplayFromCache() {
+        when(jdbcTemplate.update(anyString(), eq(7L), eq("k1"), eq("1:2:10.0"), any())).thenReturn(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertTrue(idempotencyService.execute(7L, "k1", "1:2:10.0", runs::incrementAndGet));
+        assertFalse(idempotencyService.execute(7L, "k1", "1:2:10.0", runs::incrementAndGet));
+
+        assertEquals(1, runs.get());
+        verify(jdbcTemplate, times(1)).update(anyString(), eq(7L), eq("k1"), eq("1:2:10.0"), any());
+        assertEquals(1.0, meterRegistry.get("idempotency.requests").tag("outcome", "cache_hit").counter().count());
+    }
+
+    @Test
+    void execute_shouldRejectKeyReusedForDifferentRequest() {
+        when(jdbcTemplate.update(anyString(), eq(7L), eq("k1"), eq("1:2:10.0"), any())).thenReturn(1);
+        idempotencyService.execute(7L, "k1", "1:2:10.0", () -> { });
+
+        assertThrows(RuntimeException.class, () -> idempotencyService.execute(7L, "k1", "1:2:99.0", () -> { }));
+        assertEquals(1.0, meterRegistry.get("idempotency.collisions").counter().count());
+    }
+
+    @Test
+    void execute_shouldReplayKeyStoredByAnotherNode() {
+        when(jdbcTemplate.update(anyString(), eq(7L), eq("k1"), eq("1:2:10.0"), any())).thenReturn(0);
+        when(jdbcTemplate.queryForObject(anyString(), eq(String.class), eq(7L), eq("k1"))).thenReturn("1:2:10.0");
+        AtomicInteger runs = new AtomicInteger();
+
+        assertFalse(idempotencyService.execute(7L, "k1", "1:2:10.0", runs::incrementAndGet));
+
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void execute_shouldNotRememberFailedAction() {
+        when(jdbcTemplate.update(anyString(), eq(7L), eq("k1"), eq("1:2:10.0"), any())).thenReturn(1);
+
+        assertThrows(RuntimeException.class, () -> idempotencyService.execute(7L, "k1", "1:2:10.0", () -> {
+            throw new RuntimeException("Insufficient balance");
+        }));
+        AtomicInteger runs = new AtomicInteger();
+        assertTrue(idempotencyService.execute(7L, "k1", "1:2:10.0", runs::incrementAndGet));
+
+        assertEquals(1, runs.get());
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void execute_shouldCoalesceConcurrentDuplicates() throws Exception {
+        when(jdbcTemplate.update(anyString(), eq(7L), eq("k1"), eq("1:2:10.0"), any())).thenReturn(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        Runnable slowAction = () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        CompletableFuture<Boolean> first = CompletableFuture.supplyAsync(
+                () -> idempotencyService.execute(7L, "k1", "1:2:10.0", slowAction));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> duplicate = CompletableFuture.supplyAsync(
+                () -> idempotencyService.execute(7L, "k1", "1:2:10.0", slowAction));
+        // Дубликат должен встать в ожидание, а не выполнять действие
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get("idempotency.requests").tag("outcome", "coalesced").counter().count() < 1
+                && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertFalse(duplicate.get(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+    }
+}
@@ -161,4 +161,34 @@ class JwtUtilTest {
         assertFalse(jwtUtil.validateToken(malformedToken, "any@example.com"));
     }
 
+    @Test
+    void testParseToken_shouldReuseVerifiedClaims() throws Exception {
+        Field field = JwtUtil.class.getDeclaredField("JWT_TOKEN_VALIDITY");
+        field.setAccessible(true);
+        field.set(jwtUtil, 600000L);
+        String token = jwtUtil.generateToken("test@example.com");
+
+        var first = jwtUtil.parseToken(token);
+        var second = jwtUtil.parseToken(token);
+
+        assertSame(first, second, "Repeated parse of the same token must come from the verified cache");
+    }
+
+    @Test
+    void testParseToken_shouldRejectTamperedPayloadWithCachedSignature() throws Exception {
+        Field field = JwtUtil.class.getDeclaredField("JWT_TOKEN_VALIDITY");
+        field.setAccessible(true);
+        field.set(jwtUtil, 600000L);
+        String token = jwtUtil.generateToken("test@example.com");
+        jwtUtil.parseToken(token);
+
+        String[] parts = token.split("\\.");
+        String forgedPayload = java.util.Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"sub\":\"admin\",\"exp\":4102444800}".getBytes());
+        String forged = parts[0] + "." + forgedPayload + "." + parts[2];
+
+        assertThrows(RuntimeException.class, () -> jwtUtil.parseToken(forged));
+        assertFalse(jwtUtil.validateToken(forged, "admin"));
+    }
+
 }
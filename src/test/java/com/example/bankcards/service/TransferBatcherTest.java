@@ -0,0 +1,110 @@
+package com.example.bankcards.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferBatcherTest {
+
+    @Mock
+    private TransferEngine transferEngine;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TransferBatcher batcher;
+
+    @AfterEach
+    void tearDown() {
+        if (batcher != null) {
+            batcher.stop();
+        }
+    }
+
+    @Test
+    void transfer_shouldCommitConcurrentTransfersInOneTransaction() throws Exception {
+        batcher = new TransferBatcher(transferEngine, transactionManager, meterRegistry, true, 5_000, 2, 100);
+        batcher.start();
+        // Отказ — перевод с карты 3, в каком бы порядке переводы ни попали в группу
+        when(transferEngine.applyGroup(any())).thenAnswer(invocation -> {
+            List<TransferEngine.Transfer> transfers = invocation.getArgument(0);
+            RuntimeException[] errors = new RuntimeException[transfers.size()];
+            for (int i = 0; i < transfers.size(); i++) {
+                if (transfers.get(i).fromCardId() == 3L) {
+                    errors[i] = new RuntimeException("Insufficient balance");
+                }
+            }
+            return errors;
+        });
+
+        CompletableFuture<Void> ok = CompletableFuture.runAsync(() -> batcher.transfer(7L, 1L, 2L, 10.0));
+        CompletableFuture<Void> failed = CompletableFuture.runAsync(() -> batcher.transfer(7L, 3L, 4L, 10.0));
+
+        ok.get(5, TimeUnit.SECONDS);
+        CompletionException e = assertThrows(CompletionException.class, failed::join);
+        assertEquals("Insufficient balance", e.getCause().getMessage());
+
+        // Одна транзакция на группу, без точек сохранения
+        verify(transactionManager, times(1)).getTransaction(any());
+        verify(transactionManager).commit(any());
+        verify(transferEngine, never()).transfer(any(), any(), any(), any());
+        DistributionSummary batchSize = meterRegistry.get("transfer.group_commit.batch.size").summary();
+        assertEquals(1, batchSize.count());
+        assertEquals(2.0, batchSize.totalAmount());
+        assertEquals(2, meterRegistry.get("transfer.group_commit.latency").timer().count());
+    }
+
+    @Test
+    void transfer_shouldFailWholeBatchWhenCommitFails() {
+        batcher = new TransferBatcher(transferEngine, transactionManager, meterRegistry, true, 0, 256, 100);
+        batcher.start();
+        doThrow(new IllegalStateException("connection lost")).when(transactionManager).commit(any());
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> batcher.transfer(7L, 1L, 2L, 10.0));
+
+        assertEquals("connection lost", e.getMessage());
+    }
+
+    @Test
+    void transfer_shouldFailWholeBatchOnDatabaseError() throws Exception {
+        batcher = new TransferBatcher(transferEngine, transactionManager, meterRegistry, true, 5_000, 2, 100);
+        batcher.start();
+        when(transferEngine.applyGroup(any())).thenThrow(new CannotAcquireLockException("lock timeout"));
+
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> batcher.transfer(7L, 1L, 2L, 10.0));
+        CompletableFuture<Void> second = CompletableFuture.runAsync(() -> batcher.transfer(7L, 3L, 4L, 10.0));
+
+        // После ошибки БД транзакция PostgreSQL прервана: не коммитится ни один перевод группы
+        assertInstanceOf(CannotAcquireLockException.class, assertThrows(CompletionException.class, first::join).getCause());
+        assertInstanceOf(CannotAcquireLockException.class, assertThrows(CompletionException.class, second::join).getCause());
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+    }
+
+    @Test
+    void transfer_shouldRunDirectlyWhenDisabled() {
+        batcher = new TransferBatcher(transferEngine, transactionManager, meterRegistry, false, 2, 256, 100);
+        batcher.start();
+
+        batcher.transfer(7L, 1L, 2L, 10.0);
+
+        verify(transferEngine).transfer(7L, 1L, 2L, 10.0);
+        verifyNoInteractions(transactionManager);
+    }
+}
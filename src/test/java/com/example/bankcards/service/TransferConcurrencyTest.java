@@ -0,0 +1,109 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserPrincipal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Нагрузочная проверка переводов на реальной БД: встречные переводы между несколькими картами
+// из многих потоков не должны терять обновления и приводить к deadlock
+@SpringBootTest
+class TransferConcurrencyTest {
+
+    private static final int CARDS = 4;
+    private static final int THREADS = 16;
+    private static final int TRANSFERS_PER_THREAD = 200;
+    private static final double INITIAL_BALANCE = 1000.0;
+
+    @Autowired
+    private CardService cardService;
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    private User owner;
+    private final List<Long> cardIds = new ArrayList<>();
+
+    @AfterEach
+    void cleanUp() {
+        cardRepository.deleteAllById(cardIds);
+        if (owner != null) {
+            userRepository.delete(owner);
+        }
+    }
+
+    @Test
+    void concurrentTransfers_shouldConserveTotalBalance() throws Exception {
+        owner = new User();
+        owner.setUsername("transfer-stress-" + UUID.randomUUID());
+        owner.setPassword("n/a");
+        owner.setRole("USER");
+        owner = userRepository.save(owner);
+        for (int i = 0; i < CARDS; i++) {
+            Card card = new Card();
+            card.setCardNumber("stress-" + UUID.randomUUID());
+            card.setOwner(owner);
+            card.setExpiryDate(LocalDate.now().plusYears(3));
+            card.setStatus(CardStatus.ACTIVE);
+            card.setBalance(INITIAL_BALANCE);
+            cardIds.add(cardRepository.save(card).getId());
+        }
+
+        UserPrincipal principal = UserPrincipal.from(owner);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    int from = random.nextInt(CARDS);
+                    int to = (from + 1 + random.nextInt(CARDS - 1)) % CARDS;
+                    try {
+                        cardService.transfer(principal, cardIds.get(from), cardIds.get(to), (double) (1 + random.nextInt(50)));
+                        completed.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        // Нехватка средств — ожидаемый исход при случайных суммах
+                        assertEquals("Insufficient balance", e.getMessage());
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        double total = 0;
+        for (Long id : cardIds) {
+            double balance = cardRepository.findById(id).orElseThrow().getBalance();
+            assertTrue(balance >= 0, "Balance must never go negative");
+            total += balance;
+        }
+        assertEquals(CARDS * INITIAL_BALANCE, total, 0.0001);
+        assertEquals(THREADS * TRANSFERS_PER_THREAD, completed.get() + rejected.get());
+    }
+}
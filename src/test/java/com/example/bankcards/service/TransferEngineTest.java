@@ -0,0 +1,154 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.LockedBalance;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferEngineTest {
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @InjectMocks
+    private TransferEngine transferEngine;
+
+    @Test
+    void transfer_shouldDebitFirstWhenSourceHasLowerId() {
+        when(cardRepository.debit(1L, 7L, 30.0)).thenReturn(1);
+        when(cardRepository.credit(2L, 7L, 30.0)).thenReturn(1);
+
+        transferEngine.transfer(7L, 1L, 2L, 30.0);
+
+        InOrder order = inOrder(cardRepository);
+        order.verify(cardRepository).debit(1L, 7L, 30.0);
+        order.verify(cardRepository).credit(2L, 7L, 30.0);
+        verify(cardRepository, never()).findOwnerIdById(any());
+    }
+
+    @Test
+    void transfer_shouldCreditFirstWhenDestinationHasLowerId() {
+        when(cardRepository.credit(1L, 7L, 30.0)).thenReturn(1);
+        when(cardRepository.debit(2L, 7L, 30.0)).thenReturn(1);
+
+        transferEngine.transfer(7L, 2L, 1L, 30.0);
+
+        InOrder order = inOrder(cardRepository);
+        order.verify(cardRepository).credit(1L, 7L, 30.0);
+        order.verify(cardRepository).debit(2L, 7L, 30.0);
+    }
+
+    @Test
+    void transfer_shouldReportInsufficientBalance() {
+        when(cardRepository.debit(1L, 7L, 30.0)).thenReturn(0);
+        when(cardRepository.findOwnerIdById(1L)).thenReturn(Optional.of(7L));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> transferEngine.transfer(7L, 1L, 2L, 30.0));
+
+        assertEquals("Insufficient balance", e.getMessage());
+        verify(cardRepository, never()).credit(any(), any(), any());
+    }
+
+    @Test
+    void transfer_shouldReportForeignSourceCard() {
+        when(cardRepository.debit(1L, 7L, 30.0)).thenReturn(0);
+        when(cardRepository.findOwnerIdById(1L)).thenReturn(Optional.of(8L));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> transferEngine.transfer(7L, 1L, 2L, 30.0));
+
+        assertEquals("Access denied", e.getMessage());
+    }
+
+    @Test
+    void transfer_shouldReportMissingSourceCard() {
+        when(cardRepository.debit(1L, 7L, 30.0)).thenReturn(0);
+        when(cardRepository.findOwnerIdById(1L)).thenReturn(Optional.empty());
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> transferEngine.transfer(7L, 1L, 2L, 30.0));
+
+        assertEquals("Source card not found", e.getMessage());
+    }
+
+    @Test
+    void transfer_shouldReportMissingDestinationCard() {
+        when(cardRepository.credit(1L, 7L, 30.0)).thenReturn(0);
+        when(cardRepository.findOwnerIdById(1L)).thenReturn(Optional.empty());
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> transferEngine.transfer(7L, 2L, 1L, 30.0));
+
+        assertEquals("Destination card not found", e.getMessage());
+        verify(cardRepository, never()).debit(any(), any(), any());
+    }
+
+    @Test
+    void applyGroup_shouldDecideEachTransferAgainstLockedBalances() {
+        when(cardRepository.lockBalances(Set.of(1L, 2L, 3L, 4L))).thenReturn(List.of(
+                locked(1L, 7L, 100.0), locked(2L, 7L, 0.0), locked(3L, 7L, 10.0), locked(4L, 8L, 0.0)));
+
+        RuntimeException[] errors = transferEngine.applyGroup(List.of(
+                new TransferEngine.Transfer(7L, 1L, 2L, 60.0),
+                // После первого перевода на карте 1 осталось 40
+                new TransferEngine.Transfer(7L, 1L, 2L, 50.0),
+                new TransferEngine.Transfer(7L, 3L, 4L, 5.0),
+                new TransferEngine.Transfer(7L, 2L, 3L, 20.0)));
+
+        assertNull(errors[0]);
+        assertEquals("Insufficient balance", errors[1].getMessage());
+        assertEquals("Access denied", errors[2].getMessage());
+        assertNull(errors[3]);
+        // Отклонённые переводы ничего не пишут; карта 4 не изменилась
+        verify(cardRepository).setBalance(1L, 40.0);
+        verify(cardRepository).setBalance(2L, 40.0);
+        verify(cardRepository).setBalance(3L, 30.0);
+        verify(cardRepository, never()).setBalance(eq(4L), any());
+        verify(cardRepository, never()).debit(any(), any(), any());
+        verify(cardRepository, never()).credit(any(), any(), any());
+    }
+
+    @Test
+    void applyGroup_shouldRejectMissingCards() {
+        when(cardRepository.lockBalances(Set.of(1L, 9L))).thenReturn(List.of(locked(1L, 7L, 100.0)));
+
+        RuntimeException[] errors = transferEngine.applyGroup(List.of(
+                new TransferEngine.Transfer(7L, 9L, 1L, 10.0),
+                new TransferEngine.Transfer(7L, 1L, 9L, 10.0)));
+
+        assertEquals("Source card not found", errors[0].getMessage());
+        assertEquals("Destination card not found", errors[1].getMessage());
+        verify(cardRepository, never()).setBalance(any(), any());
+    }
+
+    private static LockedBalance locked(Long id, Long ownerId, Double balance) {
+        return new LockedBalance() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Long getOwnerId() {
+                return ownerId;
+            }
+
+            @Override
+            public Double getBalance() {
+                return balance;
+            }
+        };
+    }
+}
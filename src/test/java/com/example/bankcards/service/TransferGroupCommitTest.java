@@ -0,0 +1,182 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Групповой коммит на настоящем JpaTransactionManager и PostgreSQL: в одной группе успешные переводы
+// коммитятся, отказавшие не оставляют изменений, а одиночные переводы параллельно с группами не дают deadlock
+@SpringBootTest
+class TransferGroupCommitTest {
+
+    private static final double INITIAL_BALANCE = 1000.0;
+
+    @Autowired
+    private TransferEngine transferEngine;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    private final List<User> users = new ArrayList<>();
+    private final List<Long> cardIds = new ArrayList<>();
+    private TransferBatcher batcher;
+
+    @AfterEach
+    void cleanUp() {
+        if (batcher != null) {
+            batcher.stop();
+        }
+        cardRepository.deleteAllById(cardIds);
+        userRepository.deleteAll(users);
+    }
+
+    @Test
+    void groupCommit_shouldIsolateFailedTransfers() throws Exception {
+        User owner = saveUser();
+        User stranger = saveUser();
+        // id растут в порядке сохранения: a < b < c < d
+        long a = saveCard(owner);
+        long b = saveCard(owner);
+        long c = saveCard(owner);
+        long d = saveCard(owner);
+        long foreign = saveCard(stranger);
+        long ownerId = owner.getId();
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        // Окно больше времени теста: группа закрывается, когда набраны все 4 перевода
+        batcher = new TransferBatcher(transferEngine, transactionManager, meterRegistry, true, 5_000, 4, 100);
+        batcher.start();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CompletableFuture<Void> ok = CompletableFuture.runAsync(() -> batcher.transfer(ownerId, a, b, 100.0), executor);
+            // Нехватка средств на d — зачисление на c не пишется
+            CompletableFuture<Void> insufficient =
+                    CompletableFuture.runAsync(() -> batcher.transfer(ownerId, d, c, 5000.0), executor);
+            // Зачисление на чужую карту — списание с c не пишется
+            CompletableFuture<Void> denied =
+                    CompletableFuture.runAsync(() -> batcher.transfer(ownerId, c, foreign, 50.0), executor);
+            CompletableFuture<Void> back = CompletableFuture.runAsync(() -> batcher.transfer(ownerId, b, a, 30.0), executor);
+
+            ok.get(10, TimeUnit.SECONDS);
+            back.get(10, TimeUnit.SECONDS);
+            assertEquals("Insufficient balance",
+                    assertThrows(CompletionException.class, insufficient::join).getCause().getMessage());
+            assertEquals("Access denied", assertThrows(CompletionException.class, denied::join).getCause().getMessage());
+        } finally {
+            executor.shutdown();
+        }
+
+        DistributionSummary batchSize = meterRegistry.get("transfer.group_commit.batch.size").summary();
+        assertEquals(1, batchSize.count());
+        assertEquals(4.0, batchSize.totalAmount());
+        assertEquals(INITIAL_BALANCE - 100 + 30, balance(a), 0.0001);
+        assertEquals(INITIAL_BALANCE + 100 - 30, balance(b), 0.0001);
+        assertEquals(INITIAL_BALANCE, balance(c), 0.0001);
+        assertEquals(INITIAL_BALANCE, balance(d), 0.0001);
+        assertEquals(INITIAL_BALANCE, balance(foreign), 0.0001);
+    }
+
+    @Test
+    void groupCommit_shouldNotDeadlockWithDirectTransfers() throws Exception {
+        User owner = saveUser();
+        List<Long> cards = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            cards.add(saveCard(owner));
+        }
+        long ownerId = owner.getId();
+
+        batcher = new TransferBatcher(transferEngine, transactionManager, new SimpleMeterRegistry(), true, 2, 16, 1000);
+        batcher.start();
+        // Половина потоков — через группы, половина — одиночными транзакциями (путь идемпотентных переводов)
+        // по тем же картам: блокировки берутся в одном порядке id, ошибкой может быть только нехватка средств
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < 16; t++) {
+                boolean grouped = t % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 100; i++) {
+                        int from = random.nextInt(cards.size());
+                        int to = (from + 1 + random.nextInt(cards.size() - 1)) % cards.size();
+                        double amount = 1 + random.nextInt(50);
+                        try {
+                            if (grouped) {
+                                batcher.transfer(ownerId, cards.get(from), cards.get(to), amount);
+                            } else {
+                                transferEngine.transfer(ownerId, cards.get(from), cards.get(to), amount);
+                            }
+                        } catch (RuntimeException e) {
+                            assertEquals("Insufficient balance", e.getMessage());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        double total = 0;
+        for (Long id : cards) {
+            assertTrue(balance(id) >= 0);
+            total += balance(id);
+        }
+        assertEquals(cards.size() * INITIAL_BALANCE, total, 0.0001);
+    }
+
+    private User saveUser() {
+        User user = new User();
+        user.setUsername("group-commit-" + UUID.randomUUID());
+        user.setPassword("n/a");
+        user.setRole("USER");
+        user = userRepository.save(user);
+        users.add(user);
+        return user;
+    }
+
+    private long saveCard(User owner) {
+        Card card = new Card();
+        card.setCardNumber("group-commit-" + UUID.randomUUID());
+        card.setOwner(owner);
+        card.setExpiryDate(LocalDate.now().plusYears(3));
+        card.setStatus(CardStatus.ACTIVE);
+        card.setBalance(INITIAL_BALANCE);
+        Long id = cardRepository.save(card).getId();
+        cardIds.add(id);
+        return id;
+    }
+
+    private double balance(long cardId) {
+        return cardRepository.findById(cardId).orElseThrow().getBalance();
+    }
+}
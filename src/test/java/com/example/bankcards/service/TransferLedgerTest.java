@@ -0,0 +1,147 @@
+package com.example.bankcards.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferLedgerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private TransferLedger ledger;
+
+    @AfterEach
+    void tearDown() {
+        if (ledger != null) {
+            ledger.stop();
+        }
+    }
+
+    @Test
+    void record_shouldFlushFullBatchInOneStatement() {
+        ledger = new TransferLedger(jdbcTemplate, 100, 10, 60_000);
+        ledger.start();
+
+        for (long i = 1; i <= 10; i++) {
+            ledger.record(7L, i, i + 1, 5.0);
+        }
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, timeout(5_000)).batchUpdate(anyString(), rows.capture());
+        assertEquals(10, rows.getValue().size());
+        assertEquals(1L, rows.getValue().get(0)[1]);
+    }
+
+    @Test
+    void record_shouldFlushPartialBatchAfterInterval() {
+        ledger = new TransferLedger(jdbcTemplate, 100, 500, 20);
+        ledger.start();
+
+        ledger.record(7L, 1L, 2L, 5.0);
+
+        verify(jdbcTemplate, timeout(5_000)).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void stop_shouldDrainQueuedRecords() {
+        ledger = new TransferLedger(jdbcTemplate, 100, 500, 60_000);
+        ledger.start();
+        for (long i = 1; i <= 3; i++) {
+            ledger.record(7L, i, i + 1, 5.0);
+        }
+
+        ledger.stop();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, atLeastOnce()).batchUpdate(anyString(), rows.capture());
+        assertEquals(3, rows.getAllValues().stream().mapToInt(List::size).sum());
+        assertEquals(0, ledger.pending());
+    }
+
+    @Test
+    void record_shouldWriteSynchronouslyAfterStop() {
+        ledger = new TransferLedger(jdbcTemplate, 100, 500, 60_000);
+        ledger.start();
+        ledger.stop();
+
+        ledger.record(7L, 1L, 2L, 5.0);
+        ledger.record(7L, 2L, 3L, 5.0);
+
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void write_shouldRetryUntilDatabaseRecovers() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new CannotGetJdbcConnectionException("down"))
+                .thenThrow(new CannotGetJdbcConnectionException("down"))
+                .thenThrow(new CannotGetJdbcConnectionException("down"))
+                .thenReturn(new int[]{1});
+        ledger = new TransferLedger(jdbcTemplate, 100, 500, 20);
+        ledger.start();
+
+        ledger.record(7L, 1L, 2L, 5.0);
+
+        // Паузы 200 + 400 + 800 мс; после трёх отказов строка не теряется, четвёртая попытка её записывает
+        verify(jdbcTemplate, timeout(5_000).times(4)).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void stop_shouldWriteEveryRecordRacingWithIt() throws Exception {
+        AtomicInteger written = new AtomicInteger();
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            List<?> rows = invocation.getArgument(1);
+            written.addAndGet(rows.size());
+            return new int[rows.size()];
+        });
+        ledger = new TransferLedger(jdbcTemplate, 100_000, 500, 60_000);
+        ledger.start();
+        int threads = 8;
+        int perThread = 2_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (long i = 0; i < perThread; i++) {
+                    ledger.record(7L, i, i + 1, 5.0);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        // Остановка посреди записи: каждая строка попадает либо в очередь до остановки, либо в синхронную запись
+        ledger.stop();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(threads * perThread, written.get());
+        assertEquals(0, ledger.pending());
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.bankcards.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsernameIndexTest {
+
+    private UsernameIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new UsernameIndex(null, null, 1000);
+        ReflectionTestUtils.setField(index, "ready", true);
+    }
+
+    @Test
+    void search_shouldReturnIdsOfNamesContainingTerm() {
+        index.add(1L, "alice");
+        index.add(2L, "malice");
+        index.add(3L, "bob");
+
+        assertArrayEquals(new long[]{1L, 2L}, index.search("lic"));
+        assertArrayEquals(new long[]{2L}, index.search("malic"));
+        assertArrayEquals(new long[0], index.search("zzz"));
+    }
+
+    @Test
+    void search_shouldDropCandidatesThatHaveAllTrigramsButNotTheSubstring() {
+        // Обе триграммы abcd (abc, bcd) есть, но не подряд
+        index.add(1L, "abcXbcd");
+        index.add(2L, "xabcdx");
+
+        assertArrayEquals(new long[]{2L}, index.search("abcd"));
+    }
+
+    @Test
+    void search_shouldBeCaseSensitiveLikeLike() {
+        index.add(1L, "Alice");
+
+        assertArrayEquals(new long[0], index.search("ali"));
+        assertArrayEquals(new long[]{1L}, index.search("Ali"));
+    }
+
+    @Test
+    void search_shouldMatchMultibyteSubstrings() {
+        index.add(1L, "пользователь");
+
+        assertArrayEquals(new long[]{1L}, index.search("зов"));
+    }
+
+    @Test
+    void search_shouldDeferShortTermsAndUnloadedIndexToDatabase() {
+        index.add(1L, "alice");
+
+        assertNull(index.search("al"));
+        ReflectionTestUtils.setField(index, "ready", false);
+        assertNull(index.search("alice"));
+    }
+
+    @Test
+    void remove_shouldHideUserAndSurviveLateStartupRow() {
+        index.add(1L, "alice");
+        index.remove(1L);
+        // Удалён до того, как стартовая загрузка дошла до его строки
+        index.remove(2L);
+        index.add(2L, "alina");
+
+        assertArrayEquals(new long[0], index.search("ali"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void add_shouldKeepSearchesCorrectAcrossGrowth() {
+        for (long id = 1; id <= 5000; id++) {
+            index.add(id, "user_" + id);
+        }
+        index.add(3L, "user_3"); // Повтор из стартовой загрузки — без дубля
+
+        assertArrayEquals(new long[]{4242L}, index.search("_4242"));
+        assertEquals(5000, index.search("user").length);
+        assertEquals(5000, index.size());
+    }
+}
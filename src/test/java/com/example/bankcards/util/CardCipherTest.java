@@ -0,0 +1,71 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardCipherTest {
+
+    // Ключ и данные из 03-insert-initial-data.yml (старый формат AES/CBC)
+    private static final String SEED_KEY = "Kj8pLm9nQ2vX4yZ8aB5cD6eF7gH9iJ0k";
+    private static final String SEED_CBC_CARD = "K8bPj8plwiu/pooNdffEwfta5gWLvXXsu/C82e1pxYO/oM4R3ir0w9cQpthbC4yZ";
+
+    private final CardCipher cardCipher = new CardCipher("1234567890123456");
+
+    @Test
+    void encryptAndDecryptCardNumber_shouldReturnOriginal() {
+        String cardNumber = "4111111111111111";
+
+        String encrypted = cardCipher.encrypt(cardNumber);
+
+        assertEquals(cardNumber, cardCipher.decrypt(encrypted));
+    }
+
+    @Test
+    void encrypt_shouldUseVersionedGcmFormat() {
+        byte[] first = Base64.getDecoder().decode(cardCipher.encrypt("4111111111111111"));
+        byte[] second = Base64.getDecoder().decode(cardCipher.encrypt("4111111111111111"));
+
+        assertEquals(1, first[0]);
+        assertEquals(45, first.length);
+        assertFalse(Arrays.equals(first, second), "IV must be random");
+    }
+
+    @Test
+    void decrypt_shouldReadLegacyCbcRows() {
+        CardCipher seedCipher = new CardCipher(SEED_KEY);
+
+        assertEquals("4251474594144207", seedCipher.decrypt(SEED_CBC_CARD));
+    }
+
+    @Test
+    void decryptAll_shouldDecryptMixedFormats() {
+        CardCipher seedCipher = new CardCipher(SEED_KEY);
+        String gcm = seedCipher.encrypt("4000001234567899");
+
+        assertEquals(List.of("4251474594144207", "4000001234567899"),
+                seedCipher.decryptAll(List.of(SEED_CBC_CARD, gcm)));
+    }
+
+    @Test
+    void decryptCardNumber_shouldThrowIfBase64Invalid() {
+        assertThrows(RuntimeException.class, () -> cardCipher.decrypt("%%%notbase64%%%"));
+    }
+
+    @Test
+    void decrypt_shouldThrowIfTagDoesNotMatch() {
+        byte[] data = Base64.getDecoder().decode(cardCipher.encrypt("4111111111111111"));
+        data[data.length - 1] ^= 1;
+
+        assertThrows(RuntimeException.class, () -> cardCipher.decrypt(Base64.getEncoder().encodeToString(data)));
+    }
+
+    @Test
+    void encrypt_shouldRejectWrongLength() {
+        assertThrows(IllegalArgumentException.class, () -> cardCipher.encrypt("4111"));
+    }
+}
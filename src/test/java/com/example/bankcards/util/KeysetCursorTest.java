@@ -0,0 +1,32 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeysetCursorTest {
+
+    @Test
+    void decode_shouldReturnEncodedKeyAndId() {
+        // Ключ может содержать разделитель — он идёт последним и не режется
+        String cursor = KeysetCursor.encode("username", "a:b@example.com", 42L);
+
+        KeysetCursor decoded = KeysetCursor.decode(cursor, "username");
+
+        assertEquals("a:b@example.com", decoded.getKey());
+        assertEquals(42L, decoded.getId());
+    }
+
+    @Test
+    void decode_shouldRejectCursorOfAnotherSort() {
+        String cursor = KeysetCursor.encode("id", "", 42L);
+
+        assertThrows(RuntimeException.class, () -> KeysetCursor.decode(cursor, "expiryDate"));
+    }
+
+    @Test
+    void decode_shouldRejectGarbage() {
+        assertThrows(RuntimeException.class, () -> KeysetCursor.decode("!!!", "id"));
+        assertThrows(RuntimeException.class, () -> KeysetCursor.decode(KeysetCursor.encode("id", "", 1L).substring(2), "id"));
+    }
+}